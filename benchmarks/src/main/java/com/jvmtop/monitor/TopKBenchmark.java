@@ -0,0 +1,52 @@
+package com.jvmtop.monitor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the selection of the top 30 threads out of n cpu time deltas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKBenchmark {
+    @Param({ "100", "10000" })
+    public int threadCount;
+
+    private final TopK topK = new TopK(30);
+    private long[] deltas;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        deltas = new long[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            deltas[i] = random.nextInt(100000000);
+        }
+    }
+
+    @Benchmark
+    public long selectTop30() {
+        topK.reset(30);
+        for (int i = 0; i < deltas.length; i++) {
+            topK.offer(i, deltas[i]);
+        }
+        topK.sort();
+        return topK.getId(0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.jvmtop.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jvmtop.openjdk.tools.ProxyClient;
+
+/**
+ * Measures the polling path of a jvm against the in-process platform MBeanServer
+ * ("monitor self"), so the numbers exclude any RMI round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VMInfoBenchmark {
+    private VMInfo vmInfo;
+    private ThreadSampler threadSampler;
+
+    @Setup
+    public void setup() throws Exception {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int pid = Integer.parseInt(name.substring(0, name.indexOf('@')));
+        vmInfo = VMInfo.processNewVM(ProxyClient.getProxyClient("localhost", 0, null, null), pid);
+        if (vmInfo.getState() != VMInfoState.ATTACHED) {
+            throw new IllegalStateException("could not monitor self: " + vmInfo.getState());
+        }
+        threadSampler = new ThreadSampler(vmInfo);
+        threadSampler.sample(30);
+    }
+
+    @TearDown
+    public void tearDown() {
+        vmInfo.release();
+    }
+
+    @Benchmark
+    public VMInfo update() throws Exception {
+        vmInfo.update();
+        return vmInfo;
+    }
+
+    @Benchmark
+    public int sampleTopThreads() throws Exception {
+        threadSampler.sample(30);
+        return threadSampler.getTopCount();
+    }
+}
@@ -0,0 +1,58 @@
+package com.jvmtop.openjdk.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the attribute cache of SnapshotInvocationHandler against the platform MBeanServer:
+ * a cache hit, and a refetch of all learned attributes after a flush (as done on every update).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    private static final String[] THREAD_ATTRIBUTES = { "ThreadCount", "PeakThreadCount", "TotalStartedThreadCount" };
+
+    private ProxyClient.SnapshotMBeanServerConnection snapshot;
+    private ObjectName threading;
+
+    @Setup
+    public void setup() throws Exception {
+        snapshot = Snapshot.newSnapshot(ManagementFactory.getPlatformMBeanServer());
+        threading = new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME);
+        // let the cache learn the attribute names
+        snapshot.getAttributes(threading, THREAD_ATTRIBUTES);
+    }
+
+    @Benchmark
+    public Object cachedAttribute() throws Exception {
+        return snapshot.getAttribute(threading, "ThreadCount");
+    }
+
+    @Benchmark
+    public Object cachedAttributes() throws Exception {
+        return snapshot.getAttributes(threading, THREAD_ATTRIBUTES);
+    }
+
+    @Benchmark
+    public Object flushAndRefetch() throws Exception {
+        snapshot.flush();
+        return snapshot.getAttribute(threading, "ThreadCount");
+    }
+}
@@ -0,0 +1,82 @@
+package com.jvmtop.view;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the formatting of an overview row (TextFormat vs. String.format)
+ * and AbstractConsoleView.sortByValue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+    @Param({ "100", "1000" })
+    public int mapSize;
+
+    private final StringBuilder sb = new StringBuilder(256);
+    private final AbstractConsoleView view = new AbstractConsoleView(null) {
+        public void printView(Screen screen) { }
+    };
+    private Map<Long, Long> cpuTimes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        cpuTimes = new HashMap<>();
+        for (long i = 0; i < mapSize; i++) {
+            cpuTimes.put(i, (long) random.nextInt(1000000));
+        }
+    }
+
+    @Benchmark
+    public StringBuilder overviewRow() {
+        sb.setLength(0);
+        TextFormat.appendNumber(sb, 12345, 5).append(' ');
+        TextFormat.appendTail(sb, "org.apache.catalina.startup.Bootstrap", -15);
+        TextFormat.appendBytes(sb.append(' '), 165L * 1024 * 1024, 5);
+        TextFormat.appendBytes(sb.append(' '), 3544L * 1024 * 1024, 5);
+        TextFormat.appendPercent(sb.append(' '), 0.1234, 5);
+        TextFormat.appendPercent(sb.append(' '), 0.0047, 5);
+        TextFormat.appendText(sb.append(' '), "S6U37", -5);
+        TextFormat.appendText(sb.append(' '), "webserver", 8);
+        TextFormat.appendNumber(sb.append(' '), 21, 4).append('\n');
+        return sb;
+    }
+
+    @Benchmark
+    public String overviewRowPrintf() {
+        return String.format("%5d %-15.15s %5s %5s %5.2f%% %5.2f%% %-5.5s %8.8s %4d%n",
+                12345, view.rightStr("org.apache.catalina.startup.Bootstrap", 15),
+                view.toMB(165L * 1024 * 1024), view.toMB(3544L * 1024 * 1024),
+                12.34, 0.47, "S6U37", "webserver", 21);
+    }
+
+    @Benchmark
+    public StringBuilder duration() {
+        sb.setLength(0);
+        return TextFormat.appendDuration(sb, 31 * 3600 * 1000L + 13 * 60 * 1000L, -7);
+    }
+
+    @Benchmark
+    public Map<Long, Long> sortByValue() {
+        return view.sortByValue(cpuTimes, true);
+    }
+}
@@ -1,5 +1,8 @@
 package com.jvmtop;
 
+import com.jvmtop.export.MetricStream;
+import com.jvmtop.monitor.ThreadSampler;
+import com.jvmtop.profiler.StackSampler;
 import joptsimple.OptionSet;
 
 public class Config {
@@ -7,6 +10,32 @@ public class Config {
     private final int numberOfDisplayedThreads;
     private final int threadNameDisplayWidth;
     private final boolean threadLimitEnabled;
+    private final int parallelism;
+    private final long updateTimeoutMillis;
+    private final boolean agentless;
+    private final boolean selfStats;
+    private final long slowRefreshMillis;
+    private final long fastRefreshMillis;
+    private final long deadlockIntervalMillis;
+    private final long rescanIntervalMillis;
+    private final long maxPollIntervalMillis;
+    private final int vmLimit;
+    private final String fleetFile;
+    private final int connectTimeoutMillis;
+    private final int maxConnections;
+    private final int historySize;
+    private final String recordFile;
+    private final String replayFile;
+    private final double replaySpeed;
+    private final Integer servePort;
+    private final String bindAddress;
+    private final MetricStream.Format format;
+    private final long profileIntervalMillis;
+    private final double profileBudget;
+    private final String[] profileFilters;
+    private final StackSampler.Mode profileMode;
+    private final long heapIntervalMillis;
+    private final ThreadSampler.Order threadOrder;
 
     Config(OptionSet args) {
         if (args.hasArgument("pid")) {
@@ -20,6 +49,60 @@ public class Config {
         threadLimitEnabled = !args.has("disable-threadlimit");
         numberOfDisplayedThreads = readInt(args, "threadlimit", 30);
         threadNameDisplayWidth = readInt(args, "threadnamewidth", 65);
+        parallelism = readInt(args, "parallelism", 16);
+        updateTimeoutMillis = (long) (readDouble(args, "vmtimeout", 1.0) * 1000);
+        agentless = args.has("agentless");
+        selfStats = args.has("selfstats");
+        slowRefreshMillis = (long) (readDouble(args, "slowrefresh", 10.0) * 1000);
+        fastRefreshMillis = (long) (readDouble(args, "fastrefresh", 0.0) * 1000);
+        deadlockIntervalMillis = (long) (readDouble(args, "deadlockinterval", 30.0) * 1000);
+        rescanIntervalMillis = (long) (readDouble(args, "rescaninterval", 30.0) * 1000);
+        maxPollIntervalMillis = (long) (readDouble(args, "maxpollinterval", 30.0) * 1000);
+        vmLimit = readInt(args, "vmlimit", 0);
+        fleetFile = args.hasArgument("fleet")? (String) args.valueOf("fleet") : null;
+        connectTimeoutMillis = (int) (readDouble(args, "connecttimeout", 5.0) * 1000);
+        maxConnections = readInt(args, "maxconnections", 0);
+        historySize = readInt(args, "history", 0);
+        recordFile = args.hasArgument("record")? (String) args.valueOf("record") : null;
+        replayFile = args.hasArgument("replay")? (String) args.valueOf("replay") : null;
+        replaySpeed = readDouble(args, "replayspeed", 1.0);
+        servePort = args.hasArgument("serve")? (Integer) args.valueOf("serve") : null;
+        bindAddress = args.hasArgument("bind")? (String) args.valueOf("bind") : "127.0.0.1";
+        profileIntervalMillis = readInt(args, "profileinterval", 20);
+        profileBudget = readDouble(args, "profilebudget", 5.0) / 100;
+        profileFilters = readList(args, "profilefilter", "java.,javax.,sun.,com.sun.,jdk.");
+        profileMode = args.hasArgument("profilemode")?
+                readEnum(StackSampler.Mode.class, "profiler mode", (String) args.valueOf("profilemode")) : StackSampler.Mode.CPU;
+        threadOrder = args.hasArgument("threadsort")?
+                readEnum(ThreadSampler.Order.class, "thread order", (String) args.valueOf("threadsort")) : ThreadSampler.Order.CPU;
+        heapIntervalMillis = (long) (readDouble(args, "heapinterval", 60.0) * 1000);
+        format = args.hasArgument("format")?
+                readEnum(MetricStream.Format.class, "format", (String) args.valueOf("format")) : null;
+        if (recordFile != null && replayFile != null) {
+            throw new IllegalArgumentException("Cannot record and replay at the same time");
+        }
+        if (profileBudget <= 0) {
+            throw new IllegalArgumentException("Profiler budget must be positive");
+        }
+        if (replaySpeed <= 0) {
+            throw new IllegalArgumentException("Replay speed must be positive");
+        }
+    }
+
+    private static String[] readList(OptionSet args, String p_name, String p_defaultValue) {
+        String value = args.has(p_name)? (String) args.valueOf(p_name) : p_defaultValue;
+        return value == null || value.isEmpty()? new String[0] : value.split(",");
+    }
+
+    private static <E extends Enum<E>> E readEnum(Class<E> p_type, String p_description, String p_value) {
+        StringBuilder names = new StringBuilder();
+        for (E value : p_type.getEnumConstants()) {
+            if (value.name().equalsIgnoreCase(p_value)) {
+                return value;
+            }
+            names.append(names.length() > 0? " or " : "").append(value.name().toLowerCase());
+        }
+        throw new IllegalArgumentException("Unknown " + p_description + " " + p_value + ", use " + names);
     }
 
     private static int readInt(OptionSet args, String p_name, int p_defaultValue) {
@@ -27,9 +110,76 @@ public class Config {
         return (value != null)? value : p_defaultValue;
     }
 
+    private static double readDouble(OptionSet args, String p_name, double p_defaultValue) {
+        Double value = args.hasArgument(p_name)? (Double) args.valueOf(p_name) : null;
+        return (value != null)? value : p_defaultValue;
+    }
+
     public Integer getPid() { return pid; }
 
     public int getThreadNameDisplayWidth() { return threadNameDisplayWidth; }
     public int getNumberOfDisplayedThreads() { return numberOfDisplayedThreads; }
+    public ThreadSampler.Order getThreadOrder() { return threadOrder; }
     public boolean isDisplayedThreadLimit() { return threadLimitEnabled; }
+    public int getParallelism() { return parallelism; }
+    public long getUpdateTimeoutMillis() { return updateTimeoutMillis; }
+    public boolean isAgentless() { return agentless; }
+    public boolean isSelfStats() { return selfStats; }
+    public long getSlowRefreshMillis() { return slowRefreshMillis; }
+    public long getFastRefreshMillis() { return fastRefreshMillis; }
+    public long getDeadlockIntervalMillis() { return deadlockIntervalMillis; }
+    public long getRescanIntervalMillis() { return rescanIntervalMillis; }
+
+    /**
+     * @return max. time between two polls of an idle jvm in overview mode, 0 to poll all jvms every iteration
+     */
+    public long getMaxPollIntervalMillis() { return maxPollIntervalMillis; }
+
+    /**
+     * @return max. number of jvms shown in overview mode, 0 for all
+     */
+    public int getVmLimit() { return vmLimit; }
+
+    /**
+     * @return file listing the remote jvms shown in overview mode, null for local jvms only
+     */
+    public String getFleetFile() { return fleetFile; }
+    public int getConnectTimeoutMillis() { return connectTimeoutMillis; }
+    /**
+     * @return max. number of open jmx connections, 0 if not set
+     */
+    public int getMaxConnections() { return maxConnections; }
+    public int getHistorySize() { return historySize; }
+    public String getRecordFile() { return recordFile; }
+    public String getReplayFile() { return replayFile; }
+    public double getReplaySpeed() { return replaySpeed; }
+    public Integer getServePort() { return servePort; }
+    public String getBindAddress() { return bindAddress; }
+
+    /**
+     * @return the machine-readable output format or null for console output
+     */
+    public MetricStream.Format getFormat() { return format; }
+
+    public long getProfileIntervalMillis() { return profileIntervalMillis; }
+
+    /**
+     * @return max. share of the time the profiler may spend sampling
+     */
+    public double getProfileBudget() { return profileBudget; }
+
+    /**
+     * @return prefixes of classes which are not reported as self method by the profiler
+     */
+    public String[] getProfileFilters() { return profileFilters; }
+
+    /**
+     * @return whether the profiler samples the cpu-consuming threads or all threads
+     */
+    public StackSampler.Mode getProfileMode() { return profileMode; }
+
+    /**
+     * @return min. time between two class histograms of the heap view
+     */
+    public long getHeapIntervalMillis() { return heapIntervalMillis; }
 }
@@ -26,13 +26,21 @@ import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.lang.management.ManagementFactory;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.Locale;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.jvmtop.export.MetricsServer;
+import com.jvmtop.monitor.CallStats;
+import com.jvmtop.monitor.DeadlockDetector;
+import com.jvmtop.monitor.MetricHistory;
+import com.jvmtop.monitor.PollSchedule;
+import com.jvmtop.monitor.RefreshSchedule;
+import com.jvmtop.monitor.RemoteEndpoint;
+import com.jvmtop.monitor.VMScanner;
+import com.jvmtop.openjdk.tools.ProxyClient;
 import com.jvmtop.view.*;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -58,6 +66,10 @@ public class JvmTop
     private final Double delay;
     private Boolean supportsSystemAverage;
     private java.lang.management.OperatingSystemMXBean localOSBean;
+    private String topBarSystem;
+    private boolean selfStats;
+    private long previousRpcCount;
+    private long previousRpcTime;
 
     private static OptionParser createOptionParser() {
         OptionParser parser = new OptionParser();
@@ -66,11 +78,40 @@ public class JvmTop
         parser.acceptsAll(Arrays.asList("d", "delay"),"delay between each output iteration").withRequiredArg().ofType(Double.class);
         parser.acceptsAll(Arrays.asList("p", "pid"),"PID to connect to").withRequiredArg().ofType(Integer.class);
         parser.accepts("stat", "start stat view at the specified jvm");
+        parser.accepts("profile", "start profiler view at the specified jvm");
+        parser.accepts("profilemode", "cpu samples the threads consuming cpu, wall samples all threads and shows where blocked and waiting threads wait (defaults to cpu)").withRequiredArg();
+        parser.accepts("profileinterval", "min. milliseconds between two profiler samples (defaults to 20)").withRequiredArg().ofType(Integer.class);
+        parser.accepts("profilebudget", "max. percentage of the time the profiler spends sampling, the interval is stretched beyond (defaults to 5)").withRequiredArg().ofType(Double.class);
+        parser.accepts("profilefilter", "comma-separated class prefixes which the profiler attributes to their callers (defaults to java.,javax.,sun.,com.sun.,jdk.)").withOptionalArg();
+        parser.accepts("heap", "start heap histogram view at the specified jvm, showing the classes growing most");
+        parser.accepts("heapinterval", "seconds between two heap histograms, each one triggers a full GC in the target (defaults to 60)").withRequiredArg().ofType(Double.class);
+        parser.accepts("pools", "start memory pool view at the specified jvm, showing usage, live set after GC and growth per pool");
         parser.accepts("sysinfo", "outputs diagnostic information");
         parser.accepts("verbose", "verbose mode");
         parser.accepts("threadlimit", "sets the number of displayed threads in detail mode").withRequiredArg().ofType(Integer.class);
         parser.accepts("disable-threadlimit", "displays all threads in detail mode");
+        parser.accepts("threadsort", "orders the threads in detail mode by cpu or alloc (bytes allocated per second, defaults to cpu)").withRequiredArg();
         parser.accepts("threadnamewidth", "sets displayed thread name length in detail mode (defaults to 30)").withRequiredArg().ofType(Integer.class);
+        parser.accepts("parallelism", "max. number of jvms updated concurrently in overview mode (defaults to 16)").withRequiredArg().ofType(Integer.class);
+        parser.accepts("agentless", "overview reads the jvm counters from hsperfdata files instead of attaching (no deadlock detection, cpu load on Linux only)");
+        parser.accepts("slowrefresh", "seconds between refreshes of slowly changing metrics like class counts and peak threads (defaults to 10)").withRequiredArg().ofType(Double.class);
+        parser.accepts("fastrefresh", "min. seconds between refreshes of cpu, gc and heap metrics (defaults to 0, every iteration)").withRequiredArg().ofType(Double.class);
+        parser.accepts("deadlockinterval", "seconds between deadlock scans, rechecked earlier when blocked threads rise and up to four times less often while none are blocked (defaults to 30)").withRequiredArg().ofType(Double.class);
+        parser.accepts("rescaninterval", "seconds between full scans for new jvms in overview mode, in addition to hsperfdata change events (defaults to 30)").withRequiredArg().ofType(Double.class);
+        parser.accepts("maxpollinterval", "max. seconds between two updates of an idle jvm in overview mode, unchanged jvms are polled less often up to this interval, 0 updates all jvms every iteration (defaults to 30)").withRequiredArg().ofType(Double.class);
+        parser.accepts("vmlimit", "sets the number of displayed jvms in overview mode, the hidden ones are polled less often (defaults to all which fit on the terminal)").withRequiredArg().ofType(Integer.class);
+        parser.accepts("fleet", "adds the remote jvms listed in the given file to the overview, one host:port or service:jmx: url per line, optionally followed by user and password").withRequiredArg();
+        parser.accepts("connecttimeout", "seconds to wait for a connection to a remote jvm (defaults to 5)").withRequiredArg().ofType(Double.class);
+        parser.accepts("maxconnections", "max. number of open jmx connections, the least recently used ones are closed beyond, must be above the number of remote jvms (defaults to 100 plus the remote jvms)").withRequiredArg().ofType(Integer.class);
+        parser.accepts("history", "number of samples shown as sparkline with min/avg/max of cpu (and gc, heap in detail mode), defaults to 0 (disabled)").withRequiredArg().ofType(Integer.class);
+        parser.accepts("record", "appends the metrics of every iteration to the given file").withRequiredArg();
+        parser.accepts("replay", "shows the metrics recorded in the given file instead of live jvms").withRequiredArg();
+        parser.accepts("replayspeed", "speed factor of the replay, e.g. 10 to replay ten times faster than recorded (defaults to 1)").withRequiredArg().ofType(Double.class);
+        parser.accepts("format", "writes the metrics of the stat and overview views as machine-readable lines, csv or jsonl").withRequiredArg();
+        parser.accepts("serve", "runs without terminal output, serving the metrics of all jvms in Prometheus format at http://<host>:<port>/metrics").withRequiredArg().ofType(Integer.class);
+        parser.accepts("bind", "address the metrics server listens on, e.g. 0.0.0.0 for all interfaces (defaults to 127.0.0.1)").withRequiredArg();
+        parser.accepts("selfstats", "shows the monitoring cost of jvmtop below the top bar: remote calls per second, their latency and errors, update and print times");
+        parser.accepts("vmtimeout", "seconds to wait for a jvm update before showing its last values as stale (defaults to 1)").withRequiredArg().ofType(Double.class);
 
         return parser;
     }
@@ -109,10 +150,31 @@ public class JvmTop
         Integer iterations = args.hasArgument("n")? (Integer) args.valueOf("n") : -1;
         JvmTop jvmTop = new JvmTop(delay, iterations);
         Config config = new Config(args);
-        if (config.getPid() == null) {
+        RefreshSchedule.setDefaultIntervals(config.getSlowRefreshMillis(), config.getFastRefreshMillis());
+        DeadlockDetector.setDefaultInterval(config.getDeadlockIntervalMillis());
+        PollSchedule.setDefaultMaxInterval(config.getMaxPollIntervalMillis());
+        if (config.getMaxConnections() > 0) {
+            ProxyClient.setMaxConnections(config.getMaxConnections());
+        }
+        if (config.getFleetFile() != null) {
+            // before any connection is opened, the RMI transport reads the timeouts only once;
+            // a remote call fails if it does not respond within the update deadline
+            ProxyClient.setCallTimeouts(config.getConnectTimeoutMillis(), Math.max(1000, config.getUpdateTimeoutMillis()));
+        }
+        MetricHistory.setDefaultCapacity(config.getHistorySize());
+        jvmTop.selfStats = config.isSelfStats();
+        if (config.getServePort() != null) {
+            jvmTop.serve(config);
+        } else if (config.getPid() == null) {
             jvmTop.run(new VMOverviewView(config));
         } else {
-            if(args.has("stat")) {
+            if (args.has("profile")) {
+                jvmTop.run(new VMProfileView(config));
+            } else if (args.has("pools")) {
+                jvmTop.run(new VMMemoryPoolView(config));
+            } else if (args.has("heap")) {
+                jvmTop.run(new VMHeapView(config));
+            } else if(args.has("stat") || config.getFormat() != null) {
                 jvmTop.run(new VMDetailStatView(config));
             } else {
                 jvmTop.run(new VMDetailView(config));
@@ -161,17 +223,15 @@ public class JvmTop
                     new FileOutputStream(FileDescriptor.out)), false));
             int iterations = 0;
             registerShutdown(view);
+            Screen screen = createScreen(view);
             while (!view.shouldExit()) {
-                if (maxIterations > 1 || maxIterations == -1) {
-                    if (view.isClearingRequired()) {
-                        clearTerminal();
-                    }
-                }
                 if (view.isTopBarRequired()) {
-                    printTopBar();
+                    printTopBar(screen);
                 }
-                view.printView();
-                System.out.flush();
+                long start = System.nanoTime();
+                view.printView(screen);
+                CallStats.recordPrint(System.nanoTime() - start);
+                screen.render(System.out);
                 iterations++;
                 if (iterations >= maxIterations && maxIterations > 0) {
                     break;
@@ -188,12 +248,39 @@ public class JvmTop
         }
     }
 
+    /**
+     * Daemon mode: updates the metrics of all jvms every iteration and publishes them to the http server.
+     */
+    private void serve(Config config) throws Exception {
+        VMScanner scanner = new VMScanner(config.getParallelism(), config.getUpdateTimeoutMillis(),
+                config.isAgentless(), config.getRescanIntervalMillis());
+        if (config.getFleetFile() != null) {
+            scanner.addRemoteVMs(RemoteEndpoint.readAll(config.getFleetFile()));
+        }
+        MetricsServer server = MetricsServer.start(config.getBindAddress(), config.getServePort());
+        logger.info("serving metrics at http://" + config.getBindAddress() + ":" + server.getPort() + "/metrics");
+        try {
+            int iterations = 0;
+            while (true) {
+                server.publish(scanner.update());
+                iterations++;
+                if (iterations >= maxIterations && maxIterations > 0) {
+                    break;
+                }
+                scanner.await((long) (delay * 1000));
+            }
+        } finally {
+            server.stop();
+            scanner.close();
+        }
+    }
+
     private static void registerShutdown(final ConsoleView view) {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
-                System.out.print("Finish execution ... ");
+                System.err.print("Finish execution ... ");
                 view.last();
-                System.out.println("done!");
+                System.err.println("done!");
             } catch (Exception e) {
                 System.err.println("Failed to run last in shutdown");
                 e.printStackTrace();
@@ -201,27 +288,71 @@ public class JvmTop
         }));
     }
 
-    private void clearTerminal() {
-        if (System.getProperty("os.name").contains("Windows")) {
-            System.out.print("\033[H\033[2J");
-            System.out.flush();
-        } else if (System.getProperty("jvmtop.altClear") != null) {
-            System.out.print('\f');
-        } else {
-            System.out.print(CLEAR_TERMINAL_ANSI_CMD);
+    /**
+     * Creates the screen buffer for the view: single iterations and non-clearing views
+     * are appended to the output, all others redraw only the changed parts of the terminal.
+     */
+    private Screen createScreen(ConsoleView view) {
+        if (!(maxIterations > 1 || maxIterations == -1) || !view.isClearingRequired()) {
+            return new Screen(Screen.Mode.APPEND);
+        }
+        if (System.getProperty("jvmtop.altClear") != null) {
+            return new Screen(Screen.Mode.REDRAW, "\f");
         }
+        if (System.console() == null) {
+            // output is redirected, keep writing complete frames
+            return new Screen(Screen.Mode.REDRAW, CLEAR_TERMINAL_ANSI_CMD);
+        }
+        return new Screen(Screen.Mode.DIFF);
     }
 
-    private void printTopBar() {
-        System.out.printf(" JvmTop %s - %8tT, %6s, %2d cpus, %15.15s", VERSION, new Date(), localOSBean.getArch(),
-                localOSBean.getAvailableProcessors(), localOSBean.getName() + " " + localOSBean.getVersion());
+    private void printTopBar(Screen screen) {
+        if (topBarSystem == null) {
+            topBarSystem = String.format(", %6s, %2d cpus, %15.15s", localOSBean.getArch(),
+                    localOSBean.getAvailableProcessors(), localOSBean.getName() + " " + localOSBean.getVersion());
+        }
+        StringBuilder sb = screen.buffer();
+        sb.append(" JvmTop ").append(VERSION).append(" - ");
+        TextFormat.appendTime(sb, System.currentTimeMillis()).append(topBarSystem);
 
         if (supportSystemLoadAverage() && localOSBean.getSystemLoadAverage() != -1) {
-            System.out.printf(", load avg %3.2f%n", localOSBean.getSystemLoadAverage());
+            TextFormat.appendFixed(sb.append(", load avg "), localOSBean.getSystemLoadAverage(), 2, 3);
+        }
+        if (selfStats) {
+            printSelfStats(sb.append('\n'));
+        }
+        sb.append("\n\n");
+    }
+
+    /**
+     * Appends the monitoring cost of jvmtop: remote calls per second since the previous frame,
+     * latency percentiles of the remote calls and the p99 of the updates and of printing the view.
+     */
+    private void printSelfStats(StringBuilder sb) {
+        CallStats stats = CallStats.total();
+        long now = System.currentTimeMillis();
+        long rpcCount = stats.getRpcCount();
+        sb.append(" jvmtop: ");
+        if (previousRpcTime > 0 && now > previousRpcTime) {
+            TextFormat.appendFixed(sb, (rpcCount - previousRpcCount) * 1000.0 / (now - previousRpcTime), 1, 0);
         } else {
-            System.out.println();
+            sb.append("n/a");
+        }
+        previousRpcCount = rpcCount;
+        previousRpcTime = now;
+        sb.append(" rpc/s, ").append(rpcCount).append(" rpc, ").append(stats.getRpcErrors()).append(" errors, latency p50 ");
+        appendMillis(sb, stats.getRpcPercentile(0.5)).append(" p99 ");
+        appendMillis(sb, stats.getRpcPercentile(0.99)).append(" max ");
+        appendMillis(sb, stats.getRpcCount() > 0? stats.getRpcMaxMicros() : -1).append(", update p99 ");
+        appendMillis(sb, stats.getUpdatePercentile(0.99)).append(", print p99 ");
+        appendMillis(sb, stats.getPrintPercentile(0.99));
+    }
+
+    private static StringBuilder appendMillis(StringBuilder sb, long micros) {
+        if (micros < 0) {
+            return sb.append("n/a");
         }
-        System.out.println();
+        return TextFormat.appendFixed(sb, micros / 1000.0, 1, 0).append("ms");
     }
 
     private boolean supportSystemLoadAverage() {
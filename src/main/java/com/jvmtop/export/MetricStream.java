@@ -0,0 +1,289 @@
+package com.jvmtop.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.jvmtop.monitor.CallStats;
+import com.jvmtop.monitor.VMInfo;
+import com.jvmtop.monitor.VMInfoState;
+
+/**
+ * Writes the metrics of jvms as machine-readable lines, one line per jvm and iteration.
+ *
+ * The lines of an iteration are appended to a reused buffer, encoded into a reused byte buffer
+ * and written to the channel with a single flush per iteration. Timestamps are written
+ * in ISO-8601 format (UTC) with millisecond precision. Metrics which are not available
+ * are left empty (CSV) or omitted (JSON lines), as are all metrics of jvms which are not attached.
+ */
+public class MetricStream {
+    /**
+     * The format of the lines.
+     */
+    public enum Format {
+        /**
+         * comma-separated values, preceded by a header line
+         */
+        CSV,
+        /**
+         * one JSON object per line
+         */
+        JSONL
+    }
+
+    private static final String[] COLUMNS = {
+        "timestamp", "pid", "endpoint", "main_class", "state", "stale",
+        "heap_used", "heap_committed", "heap_max", "nonheap_used", "nonheap_max",
+        "cpu_load", "gc_load", "cpu_time_ms", "gc_time_ms", "gc_count", "alloc_rate", "uptime_ms",
+        "threads", "threads_peak", "threads_started", "classes_loaded", "deadlock",
+        "rpc_count", "rpc_errors", "rpc_p50_us", "rpc_p99_us", "update_p99_us", "attach_ms", "connect_ms"
+    };
+    private static final int FIRST_METRIC = 6;
+
+    private final Format format;
+    private final WritableByteChannel channel;
+    private final StringBuilder sb = new StringBuilder(4096);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private boolean headerWritten;
+    private int column;
+
+    public MetricStream(Format p_format, WritableByteChannel p_channel) {
+        format = p_format;
+        channel = p_channel;
+    }
+
+    /**
+     * Writes the metrics of the given jvms sampled at the given time.
+     */
+    public void write(long timestamp, List<VMInfo> vmInfos) throws IOException {
+        for (int i = 0; i < vmInfos.size(); i++) {
+            appendLine(timestamp, vmInfos.get(i));
+        }
+        flush();
+    }
+
+    /**
+     * Writes the metrics of a single jvm sampled at the given time.
+     */
+    public void write(long timestamp, VMInfo vmInfo) throws IOException {
+        appendLine(timestamp, vmInfo);
+        flush();
+    }
+
+    private void appendLine(long timestamp, VMInfo vmInfo) {
+        if (format == Format.CSV && !headerWritten) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                sb.append(i == 0? "" : ",").append(COLUMNS[i]);
+            }
+            sb.append('\n');
+            headerWritten = true;
+        }
+        column = 0;
+        if (format == Format.JSONL) {
+            sb.append('{');
+        }
+        beginValue();
+        sb.append('"');
+        appendTimestamp(sb, timestamp);
+        sb.append('"');
+        // a remote jvm has no pid before it is connected, local jvms have no endpoint
+        appendNumber(vmInfo.getId());
+        if (vmInfo.getRemoteEndpoint() != null) {
+            beginValue();
+            String address = vmInfo.getRemoteEndpoint().getAddress();
+            appendString(address, 0, address.length());
+        } else {
+            skipValue();
+        }
+        beginValue();
+        appendMainClass(vmInfo.getCommandLine());
+        beginValue();
+        appendString(vmInfo.getState().name(), 0, vmInfo.getState().name().length());
+        beginValue();
+        sb.append(vmInfo.isStale());
+
+        if (vmInfo.getState() == VMInfoState.ATTACHED) {
+            appendNumber(vmInfo.getHeapUsed());
+            appendNumber(vmInfo.getHeapSize());
+            appendNumber(vmInfo.getHeapMax());
+            appendNumber(vmInfo.getNonHeapUsed());
+            appendNumber(vmInfo.getNonHeapMax());
+            appendNumber(vmInfo.getCpuLoad());
+            appendNumber(vmInfo.getGcLoad());
+            long cpuTime = vmInfo.getProcessCpuTime();
+            appendNumber(cpuTime < 0? -1 : cpuTime / 1000000);
+            appendNumber(vmInfo.getGcTime());
+            appendNumber(vmInfo.getGcCount());
+            appendNumber(vmInfo.getAllocationRate());
+            appendNumber(vmInfo.getUptime());
+            appendNumber(vmInfo.getThreadCount());
+            appendNumber(vmInfo.getPeakThreadCount());
+            appendNumber(vmInfo.getTotalStartedThreadCount());
+            appendNumber(vmInfo.getTotalLoadedClassCount());
+            beginValue();
+            sb.append(vmInfo.hasDeadlockThreads());
+            CallStats callStats = vmInfo.getCallStats();
+            appendNumber(callStats.getRpcCount());
+            appendNumber(callStats.getRpcErrors());
+            appendNumber(callStats.getRpcPercentile(0.5));
+            appendNumber(callStats.getRpcPercentile(0.99));
+            appendNumber(callStats.getUpdatePercentile(0.99));
+            appendNumber(callStats.getAttachMillis());
+            appendNumber(callStats.getConnectMillis());
+        } else if (format == Format.CSV) {
+            for (int i = FIRST_METRIC; i < COLUMNS.length; i++) {
+                sb.append(',');
+            }
+        }
+        if (format == Format.JSONL) {
+            sb.append('}');
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Appends the separator and, for JSON, the name of the next column.
+     */
+    private void beginValue() {
+        if (format == Format.CSV) {
+            if (column > 0) {
+                sb.append(',');
+            }
+        } else {
+            sb.append(column > 0? ",\"" : "\"").append(COLUMNS[column]).append("\":");
+        }
+        column++;
+    }
+
+    /**
+     * Appends a metric, negative values (not available) are left empty.
+     */
+    private void appendNumber(long value) {
+        if (value < 0) {
+            skipValue();
+            return;
+        }
+        beginValue();
+        sb.append(value);
+    }
+
+    private void appendNumber(double value) {
+        if (value < 0 || Double.isNaN(value)) {
+            skipValue();
+            return;
+        }
+        beginValue();
+        sb.append(value);
+    }
+
+    private void skipValue() {
+        if (format == Format.CSV && column > 0) {
+            sb.append(',');
+        }
+        column++;
+    }
+
+    /**
+     * Appends the main class, the first word of the command line.
+     */
+    private void appendMainClass(String commandLine) {
+        if (commandLine == null) {
+            if (format == Format.JSONL) {
+                sb.append("null");
+            }
+            return;
+        }
+        int end = commandLine.indexOf(' ');
+        appendString(commandLine, 0, end < 0? commandLine.length() : end);
+    }
+
+    /**
+     * Appends a quoted string: CSV doubles the quotes, JSON escapes quotes, backslashes and control characters.
+     */
+    private void appendString(String value, int from, int to) {
+        sb.append('"');
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (format == Format.CSV) {
+                if (c == '"') {
+                    sb.append('"');
+                }
+                sb.append(c);
+            } else if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends the given time as yyyy-MM-ddTHH:mm:ss.SSSZ (UTC).
+     */
+    static StringBuilder appendTimestamp(StringBuilder sb, long millis) {
+        long days = Math.floorDiv(millis, 86400000L);
+        long millisOfDay = Math.floorMod(millis, 86400000L);
+        // civil date from days since 1970-01-01 (proleptic gregorian calendar)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2? 1 : 0);
+
+        sb.append(year).append('-');
+        appendDigits(sb, month, 2).append('-');
+        appendDigits(sb, day, 2).append('T');
+        appendDigits(sb, millisOfDay / 3600000, 2).append(':');
+        appendDigits(sb, millisOfDay / 60000 % 60, 2).append(':');
+        appendDigits(sb, millisOfDay / 1000 % 60, 2).append('.');
+        return appendDigits(sb, millisOfDay % 1000, 3).append('Z');
+    }
+
+    private static StringBuilder appendDigits(StringBuilder sb, long value, int digits) {
+        for (long limit = 10; digits > 1; digits--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        return sb.append(value);
+    }
+
+    /**
+     * Encodes the appended lines and writes them to the channel.
+     */
+    private void flush() throws IOException {
+        CharBuffer chars = CharBuffer.wrap(sb);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isUnderflow()) {
+                encoder.flush(buffer);
+                break;
+            }
+            drain();
+        }
+        drain();
+        sb.setLength(0);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,114 @@
+package com.jvmtop.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jvmtop.monitor.VMInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metrics of the monitored jvms in Prometheus text format over http (GET /metrics).
+ *
+ * The response is encoded once per collection by {@link #publish(List)}, reusing its buffers,
+ * and every scrape only writes out the latest published bytes. Thus scrapes never cause
+ * calls to the monitored jvms and their cost does not depend on the number of scrapers.
+ */
+public class MetricsServer {
+    private static final int HANDLER_THREADS = 2;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final StringBuilder text = new StringBuilder(16 * 1024);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer encoded = ByteBuffer.allocate(16 * 1024);
+    private volatile byte[] response = new byte[0];
+
+    private MetricsServer(HttpServer p_server) {
+        server = p_server;
+        executor = Executors.newFixedThreadPool(HANDLER_THREADS, new HandlerThreadFactory());
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::handle);
+    }
+
+    /**
+     * Starts a server listening on the given address and port.
+     *
+     * @param bindAddress host name or ip address of the interface, e.g. 127.0.0.1 or 0.0.0.0 for all interfaces
+     */
+    public static MetricsServer start(String bindAddress, int port) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(bindAddress, port);
+        if (address.isUnresolved()) {
+            throw new IOException("Unknown bind address " + bindAddress);
+        }
+        MetricsServer metricsServer = new MetricsServer(HttpServer.create(address, 0));
+        metricsServer.server.start();
+        return metricsServer;
+    }
+
+    /**
+     * Encodes the current metrics of the given jvms, which are served from now on.
+     */
+    public void publish(List<VMInfo> vmInfos) {
+        text.setLength(0);
+        PrometheusFormat.appendMetrics(text, vmInfos);
+
+        encoder.reset();
+        encoded.clear();
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (encoder.encode(chars, encoded, true).isOverflow()) {
+            encoded = ByteBuffer.allocate(encoded.capacity() * 2);
+            chars.rewind();
+            encoder.reset();
+        }
+        response = Arrays.copyOf(encoded.array(), encoded.position());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = response;
+            exchange.getResponseHeaders().set("Content-Type", PrometheusFormat.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static final class HandlerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "jvmtop-http-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
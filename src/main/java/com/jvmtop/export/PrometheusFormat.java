@@ -0,0 +1,180 @@
+package com.jvmtop.export;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import com.jvmtop.monitor.VMInfo;
+import com.jvmtop.monitor.VMInfoState;
+
+/**
+ * Encodes the metrics of jvms in the Prometheus text exposition format (version 0.0.4).
+ *
+ * The samples are appended to a caller-provided buffer, reading only the values already
+ * held by the VMInfo objects, so encoding never causes calls to the monitored jvms.
+ * Each jvm is labelled with its pid, main class, java version and user,
+ * remote jvms additionally with their jmx endpoint.
+ */
+public final class PrometheusFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final Metric UP = new Metric("jvmtop_up", "gauge",
+            "1 if the jvm is attached and its metrics are up to date, otherwise 0",
+            vm -> vm.getState() == VMInfoState.ATTACHED && !vm.isStale()? 1 : 0);
+
+    private static final Metric[] METRICS = {
+        new Metric("jvmtop_heap_used_bytes", "gauge", "Used heap memory", VMInfo::getHeapUsed),
+        new Metric("jvmtop_heap_committed_bytes", "gauge", "Committed heap memory", VMInfo::getHeapSize),
+        new Metric("jvmtop_heap_max_bytes", "gauge", "Max. heap memory", VMInfo::getHeapMax),
+        new Metric("jvmtop_nonheap_used_bytes", "gauge", "Used non-heap memory", VMInfo::getNonHeapUsed),
+        new Metric("jvmtop_nonheap_max_bytes", "gauge", "Max. non-heap memory", VMInfo::getNonHeapMax),
+        new Metric("jvmtop_cpu_load_ratio", "gauge",
+                "Cpu time used by the jvm since the previous update, relative to all processors", VMInfo::getCpuLoad),
+        new Metric("jvmtop_gc_load_ratio", "gauge",
+                "Gc time since the previous update, relative to the cpu time used by the jvm", VMInfo::getGcLoad),
+        new Metric("jvmtop_cpu_seconds_total", "counter", "Cpu time used by the jvm",
+                vm -> vm.getProcessCpuTime() / 1e9),
+        new Metric("jvmtop_gc_seconds_total", "counter", "Time spent in garbage collections",
+                vm -> vm.getGcTime() / 1e3),
+        new Metric("jvmtop_gc_collections_total", "counter", "Number of garbage collections", VMInfo::getGcCount),
+        new Metric("jvmtop_allocation_bytes_per_second", "gauge", "Bytes allocated per second by all threads",
+                VMInfo::getAllocationRate),
+        new Metric("jvmtop_uptime_seconds", "gauge", "Uptime of the jvm", vm -> vm.getUptime() / 1e3),
+        new Metric("jvmtop_threads", "gauge", "Number of live threads", VMInfo::getThreadCount),
+        new Metric("jvmtop_threads_peak", "gauge", "Peak number of live threads", VMInfo::getPeakThreadCount),
+        new Metric("jvmtop_threads_started_total", "counter", "Number of threads started",
+                VMInfo::getTotalStartedThreadCount),
+        new Metric("jvmtop_classes_loaded_total", "counter", "Number of classes loaded",
+                VMInfo::getTotalLoadedClassCount),
+        new Metric("jvmtop_deadlocked", "gauge", "1 if deadlocked threads were detected, otherwise 0",
+                vm -> vm.hasDeadlockThreads()? 1 : 0),
+        new Metric("jvmtop_self_rpc_total", "counter", "Remote calls made by jvmtop to monitor the jvm",
+                vm -> vm.getCallStats().getRpcCount()),
+        new Metric("jvmtop_self_rpc_errors_total", "counter", "Remote calls made by jvmtop which failed",
+                vm -> vm.getCallStats().getRpcErrors()),
+        new Metric("jvmtop_self_rpc_seconds_total", "counter", "Time spent by jvmtop in remote calls to the jvm",
+                vm -> vm.getCallStats().getRpcMicros() / 1e6),
+        new Metric("jvmtop_self_rpc_latency_p50_seconds", "gauge", "Median latency of the remote calls to the jvm",
+                vm -> micros(vm.getCallStats().getRpcPercentile(0.5))),
+        new Metric("jvmtop_self_rpc_latency_p99_seconds", "gauge", "99th percentile latency of the remote calls to the jvm",
+                vm -> micros(vm.getCallStats().getRpcPercentile(0.99))),
+        new Metric("jvmtop_self_update_p99_seconds", "gauge", "99th percentile duration of the updates of the jvm",
+                vm -> micros(vm.getCallStats().getUpdatePercentile(0.99))),
+        new Metric("jvmtop_self_attach_seconds", "gauge", "Time it took to start the management agent of the jvm",
+                vm -> millis(vm.getCallStats().getAttachMillis())),
+        new Metric("jvmtop_self_connect_seconds", "gauge", "Time it took to connect to the jvm",
+                vm -> millis(vm.getCallStats().getConnectMillis())),
+    };
+
+    private PrometheusFormat() { }
+
+    /**
+     * Appends all metrics of the given jvms. Only jvmtop_up is reported for jvms which are not attached,
+     * stale jvms report their last values. Negative values (not available) are left out.
+     */
+    public static StringBuilder appendMetrics(StringBuilder sb, List<VMInfo> vmInfos) {
+        appendMetric(sb, UP, vmInfos, false);
+        for (Metric metric : METRICS) {
+            appendMetric(sb, metric, vmInfos, true);
+        }
+        return sb;
+    }
+
+    private static void appendMetric(StringBuilder sb, Metric metric, List<VMInfo> vmInfos, boolean attachedOnly) {
+        sb.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+        sb.append("# TYPE ").append(metric.name).append(' ').append(metric.type).append('\n');
+        for (int i = 0; i < vmInfos.size(); i++) {
+            VMInfo vmInfo = vmInfos.get(i);
+            if (attachedOnly && vmInfo.getState() != VMInfoState.ATTACHED) {
+                continue;
+            }
+            double value = metric.value.applyAsDouble(vmInfo);
+            if (value < 0) {
+                continue;
+            }
+            sb.append(metric.name);
+            appendLabels(sb, vmInfo);
+            sb.append(' ');
+            appendValue(sb, value);
+            sb.append('\n');
+        }
+    }
+
+    private static void appendLabels(StringBuilder sb, VMInfo vmInfo) {
+        sb.append('{');
+        // the pid of a remote jvm is not known before it is connected
+        if (vmInfo.getId() >= 0) {
+            sb.append("pid=\"").append(vmInfo.getId()).append('"');
+        }
+        if (vmInfo.getRemoteEndpoint() != null) {
+            String address = vmInfo.getRemoteEndpoint().getAddress();
+            appendLabel(sb, "endpoint", address, 0, address.length());
+        }
+        String commandLine = vmInfo.getCommandLine();
+        if (commandLine != null) {
+            int end = commandLine.indexOf(' ');
+            appendLabel(sb, "main_class", commandLine, 0, end < 0? commandLine.length() : end);
+        }
+        if (vmInfo.getVMVersion() != null) {
+            appendLabel(sb, "version", vmInfo.getVMVersion(), 0, vmInfo.getVMVersion().length());
+        }
+        if (vmInfo.getOSUser() != null) {
+            appendLabel(sb, "user", vmInfo.getOSUser(), 0, vmInfo.getOSUser().length());
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Appends a label, escaping backslashes, double quotes and line feeds in its value.
+     */
+    private static void appendLabel(StringBuilder sb, String name, String value, int from, int to) {
+        if (sb.charAt(sb.length() - 1) != '{') {
+            sb.append(',');
+        }
+        sb.append(name).append("=\"");
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendValue(StringBuilder sb, double value) {
+        long integral = (long) value;
+        if (integral == value) {
+            sb.append(integral);
+        } else {
+            sb.append(value);
+        }
+    }
+
+    /**
+     * Converts to seconds, keeping negative values (not available).
+     */
+    private static double micros(long value) {
+        return value < 0? -1 : value / 1e6;
+    }
+
+    private static double millis(long value) {
+        return value < 0? -1 : value / 1e3;
+    }
+
+    private static final class Metric {
+        final String name;
+        final String type;
+        final String help;
+        final ToDoubleFunction<VMInfo> value;
+
+        Metric(String p_name, String p_type, String p_help, ToDoubleFunction<VMInfo> p_value) {
+            name = p_name;
+            type = p_type;
+            help = p_help;
+            value = p_value;
+        }
+    }
+}
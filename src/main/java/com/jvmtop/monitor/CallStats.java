@@ -0,0 +1,165 @@
+package com.jvmtop.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jvmtop.openjdk.tools.CallListener;
+
+/**
+ * Counts and times the work jvmtop does to monitor a jvm: the remote calls on its connection,
+ * the time to attach (start the management agent) and to connect, and the duration of its updates.
+ *
+ * The process-wide total is summed up from the statistics of all jvms when it is read,
+ * into one instance which is reused, so a remote call only locks the statistics of its own jvm
+ * and reading the total does not allocate. The total additionally keeps
+ * the time spent printing the views. Durations are kept in microseconds
+ * in fixed-memory PauseHistograms, so the statistics cover the whole session.
+ */
+public class CallStats implements CallListener {
+    /**
+     * The statistics of released jvms and of printing. Also guards LIVE.
+     */
+    private static final CallStats RELEASED = new CallStats();
+    private static final List<CallStats> LIVE = new ArrayList<CallStats>();
+    private static final CallStats TOTAL = new CallStats();
+
+    private final PauseHistogram rpcDurations = new PauseHistogram();
+    private final PauseHistogram updateDurations = new PauseHistogram();
+    private final PauseHistogram printDurations = new PauseHistogram();
+    private long rpcErrors;
+    private long attachMillis = -1;
+    private long connectMillis = -1;
+    private volatile boolean registered;
+
+    /**
+     * @return a snapshot of the statistics of all jvms monitored by this process,
+     *         the same instance is updated by the next call
+     */
+    public static CallStats total() {
+        synchronized (RELEASED) {
+            synchronized (TOTAL) {
+                TOTAL.clear();
+                TOTAL.add(RELEASED);
+                for (CallStats stats : LIVE) {
+                    synchronized (stats) {
+                        TOTAL.add(stats);
+                    }
+                }
+            }
+        }
+        return TOTAL;
+    }
+
+    private void clear() {
+        rpcDurations.clear();
+        updateDurations.clear();
+        printDurations.clear();
+        rpcErrors = 0;
+    }
+
+    private void add(CallStats other) {
+        rpcDurations.add(other.rpcDurations);
+        updateDurations.add(other.updateDurations);
+        printDurations.add(other.printDurations);
+        rpcErrors += other.rpcErrors;
+    }
+
+    /**
+     * Adds these statistics to the total once something was recorded,
+     * so statistics which are never used (e.g. of replayed jvms) are not kept.
+     */
+    private void register() {
+        if (!registered) {
+            synchronized (RELEASED) {
+                if (!registered) {
+                    LIVE.add(this);
+                    registered = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the statistics in the total after the jvm was released, calls recorded later are not counted there.
+     */
+    public void release() {
+        synchronized (RELEASED) {
+            if (LIVE.remove(this)) {
+                synchronized (this) {
+                    RELEASED.add(this);
+                }
+            }
+            registered = true;
+        }
+    }
+
+    @Override
+    public void recordRpc(long nanos, boolean failed) {
+        synchronized (this) {
+            rpcDurations.add(nanos / 1000);
+            if (failed) {
+                rpcErrors++;
+            }
+        }
+        register();
+    }
+
+    public void recordUpdate(long nanos) {
+        synchronized (this) {
+            updateDurations.add(nanos / 1000);
+        }
+        register();
+    }
+
+    /**
+     * Records the time it took to print a view, in the process-wide total.
+     */
+    public static void recordPrint(long nanos) {
+        synchronized (RELEASED) {
+            RELEASED.printDurations.add(nanos / 1000);
+        }
+    }
+
+    @Override
+    public synchronized void recordAttach(long millis) { attachMillis = millis; }
+
+    @Override
+    public synchronized void recordConnect(long millis) { connectMillis = millis; }
+
+    public synchronized long getRpcCount() { return rpcDurations.getCount(); }
+    public synchronized long getRpcErrors() { return rpcErrors; }
+
+    /**
+     * @return the total time spent in remote calls in microseconds
+     */
+    public synchronized long getRpcMicros() { return rpcDurations.getTotal(); }
+
+    /**
+     * @return the duration of remote calls at the given quantile in microseconds, -1 if there were none
+     */
+    public synchronized long getRpcPercentile(double quantile) { return rpcDurations.getPercentile(quantile); }
+
+    public synchronized long getRpcMaxMicros() { return rpcDurations.getMax(); }
+
+    public synchronized long getUpdateCount() { return updateDurations.getCount(); }
+
+    /**
+     * @return the duration of updates at the given quantile in microseconds, -1 if there were none
+     */
+    public synchronized long getUpdatePercentile(double quantile) { return updateDurations.getPercentile(quantile); }
+
+    /**
+     * @return the duration of printing a view at the given quantile in microseconds (total only), -1 if none
+     */
+    public synchronized long getPrintPercentile(double quantile) { return printDurations.getPercentile(quantile); }
+
+    /**
+     * @return milliseconds it took to start the management agent, -1 if it was not started by jvmtop
+     */
+    public synchronized long getAttachMillis() { return attachMillis; }
+
+    /**
+     * @return milliseconds it took to open the last connection, -1 if not connected yet
+     */
+    public synchronized long getConnectMillis() { return connectMillis; }
+}
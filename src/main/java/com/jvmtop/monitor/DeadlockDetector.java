@@ -0,0 +1,143 @@
+package com.jvmtop.monitor;
+
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.jvmtop.openjdk.tools.ProxyClient;
+
+/**
+ * Detects deadlocked threads on an adaptive schedule.
+ *
+ * A deadlock scan walks the lock graph of all threads inside the monitored jvm,
+ * so it runs only every <code>interval</code> ms by default. Each scan without a deadlock
+ * also counts the BLOCKED threads of the jvm: if there are more than at the previous scan,
+ * or the thread sampler of the detail view sees more of them, the jvm is scanned again
+ * after a much shorter delay. While no thread is blocked, the interval doubles
+ * up to four times the default interval.
+ */
+public class DeadlockDetector {
+    private static final long RECHECK_INTERVAL_MILLIS = 2000;
+    private static final int MAX_BACKOFF = 4;
+    private static long defaultIntervalMillis = 30000;
+
+    private final long intervalMillis;
+    private long currentIntervalMillis;
+    private long lastCheck = Long.MIN_VALUE;
+    private long nextCheck = Long.MIN_VALUE;
+    private int blockedThreadCount;
+    private int sampledBlockedThreadCount;
+    private List<List<ThreadInfo>> cycles = Collections.emptyList();
+
+    public DeadlockDetector() {
+        intervalMillis = defaultIntervalMillis;
+        currentIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Sets the interval used by all detectors created afterwards.
+     */
+    public static void setDefaultInterval(long p_intervalMillis) {
+        defaultIntervalMillis = p_intervalMillis;
+    }
+
+    public boolean isDue(long now) {
+        return now >= nextCheck;
+    }
+
+    /**
+     * Reports the number of BLOCKED threads among the threads seen by a sampler.
+     * An increase schedules an early re-check.
+     */
+    public void reportBlockedThreads(int count) {
+        if (count > sampledBlockedThreadCount && lastCheck != Long.MIN_VALUE) {
+            nextCheck = Math.min(nextCheck, lastCheck + RECHECK_INTERVAL_MILLIS);
+        }
+        sampledBlockedThreadCount = count;
+    }
+
+    /**
+     * Scans for deadlocks with a single call and, if some were found,
+     * fetches the lock information of the involved threads.
+     * Otherwise the BLOCKED threads are counted (two more calls) to schedule the next scan.
+     */
+    public void check(ProxyClient proxyClient, ThreadMXBean threadMXBean, long now) throws Exception {
+        lastCheck = now;
+        long[] ids = proxyClient.findDeadlockedThreads();
+        if (ids != null && ids.length > 0) {
+            cycles = toCycles(threadMXBean.getThreadInfo(ids, 1));
+            currentIntervalMillis = intervalMillis;
+            nextCheck = now + intervalMillis;
+            return;
+        }
+        cycles = Collections.emptyList();
+        int blocked = countBlockedThreads(threadMXBean);
+        if (blocked > blockedThreadCount) {
+            // a deadlock may be forming, its threads are blocked before the cycle closes
+            currentIntervalMillis = intervalMillis;
+            nextCheck = now + Math.min(RECHECK_INTERVAL_MILLIS, intervalMillis);
+        } else {
+            if (blocked == 0) {
+                currentIntervalMillis = Math.min(currentIntervalMillis * 2, intervalMillis * MAX_BACKOFF);
+            } else {
+                currentIntervalMillis = intervalMillis;
+            }
+            nextCheck = now + currentIntervalMillis;
+        }
+        blockedThreadCount = blocked;
+    }
+
+    private static int countBlockedThreads(ThreadMXBean threadMXBean) {
+        int blocked = 0;
+        for (ThreadInfo info : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), 0)) {
+            if (info != null && info.getThreadState() == Thread.State.BLOCKED) {
+                blocked++;
+            }
+        }
+        return blocked;
+    }
+
+    /**
+     * Orders the deadlocked threads into cycles, following the lock owners.
+     */
+    private static List<List<ThreadInfo>> toCycles(ThreadInfo[] infos) {
+        Map<Long, ThreadInfo> byId = new HashMap<>();
+        for (ThreadInfo info : infos) {
+            if (info != null) {
+                byId.put(info.getThreadId(), info);
+            }
+        }
+        List<List<ThreadInfo>> result = new ArrayList<>();
+        Set<Long> visited = new HashSet<>();
+        for (ThreadInfo start : byId.values()) {
+            if (visited.contains(start.getThreadId())) {
+                continue;
+            }
+            List<ThreadInfo> cycle = new ArrayList<>();
+            ThreadInfo current = start;
+            while (current != null && visited.add(current.getThreadId())) {
+                cycle.add(current);
+                current = byId.get(current.getLockOwnerId());
+            }
+            result.add(cycle);
+        }
+        return result;
+    }
+
+    public boolean hasDeadlocks() {
+        return !cycles.isEmpty();
+    }
+
+    /**
+     * @return the deadlocked threads, each list contains threads which wait for a lock held by the next one
+     */
+    public List<List<ThreadInfo>> getCycles() {
+        return cycles;
+    }
+}
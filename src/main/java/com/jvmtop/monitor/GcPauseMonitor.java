@@ -0,0 +1,98 @@
+package com.jvmtop.monitor;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * Collects the GC pauses of a jvm from the notifications of its garbage collectors,
+ * which are pushed by the jvm instead of being polled.
+ *
+ * For each collector the durations go into a fixed-memory PauseHistogram, along with
+ * the cause and the used memory (all pools) before and after the most recent collection.
+ * Notifications arrive on the notification thread of the connection, reads are synchronized.
+ */
+public class GcPauseMonitor implements NotificationListener {
+    private final long startTime = System.currentTimeMillis();
+    private String[] names = new String[0];
+    private PauseHistogram[] histograms = new PauseHistogram[0];
+    private String[] lastCauses = new String[0];
+    private long[] lastUsedBefore = new long[0];
+    private long[] lastUsedAfter = new long[0];
+
+    public synchronized void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())
+                || !(notification.getUserData() instanceof CompositeData)) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        int collector = indexOf(info.getGcName());
+        GcInfo gcInfo = info.getGcInfo();
+        histograms[collector].add(gcInfo.getDuration());
+        lastCauses[collector] = info.getGcCause();
+        lastUsedBefore[collector] = sumUsed(gcInfo.getMemoryUsageBeforeGc());
+        lastUsedAfter[collector] = sumUsed(gcInfo.getMemoryUsageAfterGc());
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        int collector = names.length;
+        names = Arrays.copyOf(names, collector + 1);
+        histograms = Arrays.copyOf(histograms, collector + 1);
+        lastCauses = Arrays.copyOf(lastCauses, collector + 1);
+        lastUsedBefore = Arrays.copyOf(lastUsedBefore, collector + 1);
+        lastUsedAfter = Arrays.copyOf(lastUsedAfter, collector + 1);
+        names[collector] = name;
+        histograms[collector] = new PauseHistogram();
+        return collector;
+    }
+
+    private static long sumUsed(Map<String, MemoryUsage> usageByPool) {
+        long used = 0;
+        for (MemoryUsage usage : usageByPool.values()) {
+            used += usage.getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * @return number of collectors which reported at least one collection
+     */
+    public synchronized int getCollectorCount() { return names.length; }
+
+    public synchronized String getName(int collector) { return names[collector]; }
+
+    public synchronized long getCount(int collector) { return histograms[collector].getCount(); }
+
+    /**
+     * @return the duration at the given quantile in milliseconds, see PauseHistogram.getPercentile
+     */
+    public synchronized long getPercentile(int collector, double quantile) {
+        return histograms[collector].getPercentile(quantile);
+    }
+
+    public synchronized long getMax(int collector) { return histograms[collector].getMax(); }
+
+    /**
+     * @return collections per minute since the subscription
+     */
+    public synchronized double getFrequency(int collector) {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0? histograms[collector].getCount() * 60000.0 / elapsed : 0;
+    }
+
+    public synchronized String getLastCause(int collector) { return lastCauses[collector]; }
+    public synchronized long getLastUsedBefore(int collector) { return lastUsedBefore[collector]; }
+    public synchronized long getLastUsedAfter(int collector) { return lastUsedAfter[collector]; }
+}
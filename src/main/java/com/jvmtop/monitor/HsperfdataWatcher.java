@@ -0,0 +1,144 @@
+package com.jvmtop.monitor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import sun.jvmstat.perfdata.monitor.protocol.local.PerfDataFile;
+
+/**
+ * Watches the hsperfdata directories of all users for jvms being started or terminated,
+ * so that a full scan for jvms is only required if something has changed.
+ *
+ * Started jvms are reported after a short settle time, as a jvm creates its
+ * hsperfdata file early during startup, before it accepts an attach.
+ */
+public class HsperfdataWatcher implements Runnable {
+    private static final Logger logger = Logger.getLogger("jvmtop");
+    private static final long SETTLE_MILLIS = 500;
+
+    private final WatchService watchService;
+    private final Path tmpDir;
+    private final Object lock = new Object();
+    private boolean changed = true;
+    private long wakeupAt = Long.MAX_VALUE;
+
+    private HsperfdataWatcher(WatchService p_watchService, Path p_tmpDir) {
+        watchService = p_watchService;
+        tmpDir = p_tmpDir;
+    }
+
+    /**
+     * Starts watching in a daemon thread.
+     *
+     * @return the watcher or null if the file system does not support watching the directories
+     */
+    public static HsperfdataWatcher start() {
+        try {
+            Path tmpDir = Paths.get(PerfDataFile.getTempDirectory());
+            HsperfdataWatcher watcher = new HsperfdataWatcher(FileSystems.getDefault().newWatchService(), tmpDir);
+            tmpDir.register(watcher.watchService, StandardWatchEventKinds.ENTRY_CREATE);
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(tmpDir, PerfDataFile.dirNamePrefix + "*")) {
+                for (Path dir : dirs) {
+                    watcher.registerUserDir(dir);
+                }
+            }
+            Thread thread = new Thread(watcher, "jvmtop-hsperfdata-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            return watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.log(Level.FINE, "cannot watch hsperfdata directories, falling back to periodic scans", e);
+            return null;
+        }
+    }
+
+    private void registerUserDir(Path dir) throws IOException {
+        if (Files.isDirectory(dir)) {
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean started = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        started = true;
+                        continue;
+                    }
+                    Path name = (Path) event.context();
+                    if (tmpDir.equals(key.watchable())) {
+                        if (name.toString().startsWith(PerfDataFile.dirNamePrefix)) {
+                            registerUserDir(tmpDir.resolve(name));
+                            started = true;
+                        }
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        started = true;
+                    }
+                }
+                key.reset();
+                synchronized (lock) {
+                    changed = true;
+                    if (started) {
+                        wakeupAt = Math.min(wakeupAt, System.currentTimeMillis() + SETTLE_MILLIS);
+                        lock.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // watcher closed
+        } catch (IOException e) {
+            logger.log(Level.FINE, "hsperfdata watcher stopped", e);
+        }
+    }
+
+    /**
+     * @return true if a jvm was started or terminated since the last call
+     */
+    public boolean pollChanges() {
+        synchronized (lock) {
+            boolean result = changed;
+            changed = false;
+            wakeupAt = Long.MAX_VALUE;
+            return result;
+        }
+    }
+
+    /**
+     * Waits the given time, but returns earlier if a jvm was started in the meantime.
+     */
+    public void await(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (lock) {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long until = Math.min(deadline, wakeupAt);
+                if (now >= until) {
+                    return;
+                }
+                lock.wait(until - now);
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
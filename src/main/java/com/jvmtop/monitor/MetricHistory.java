@@ -0,0 +1,117 @@
+package com.jvmtop.monitor;
+
+/**
+ * Keeps the last samples of a metric in a fixed-size ring buffer of primitives.
+ *
+ * The buffer is allocated once, so memory use is predictable (8 bytes per sample)
+ * and adding a sample does not create any objects.
+ */
+public class MetricHistory {
+    private static int defaultCapacity = 0;
+
+    private final double[] values;
+    private int next;
+    private int size;
+
+    public MetricHistory() {
+        this(defaultCapacity);
+    }
+
+    public MetricHistory(int capacity) {
+        values = new double[Math.max(0, capacity)];
+    }
+
+    /**
+     * Sets the number of samples kept by all histories created afterwards, 0 disables the history.
+     */
+    public static void setDefaultCapacity(int p_capacity) {
+        defaultCapacity = p_capacity;
+    }
+
+    public static int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    public void add(double value) {
+        if (values.length == 0) {
+            return;
+        }
+        values[next] = value;
+        next = (next + 1) % values.length;
+        if (size < values.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Replaces the samples by the latest samples of the given history, as many as fit.
+     */
+    public void copyFrom(MetricHistory other) {
+        clear();
+        for (int i = Math.max(0, other.size - values.length); i < other.size; i++) {
+            add(other.get(i));
+        }
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * @return number of samples kept, at most the capacity
+     */
+    public int size() { return size; }
+
+    public int capacity() { return values.length; }
+
+    /**
+     * @param index 0 for the oldest sample kept, size() - 1 for the latest
+     */
+    public double get(int index) {
+        int i = next - size + index;
+        return values[i < 0? i + values.length : i];
+    }
+
+    /**
+     * @return the smallest sample or NaN if no samples were added
+     */
+    public double min() {
+        double min = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            double value = get(i);
+            if (!(value >= min)) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @return the largest sample or NaN if no samples were added
+     */
+    public double max() {
+        double max = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            double value = get(i);
+            if (!(value <= max)) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the average of all samples or NaN if no samples were added
+     */
+    public double average() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += get(i);
+        }
+        return sum / size;
+    }
+}
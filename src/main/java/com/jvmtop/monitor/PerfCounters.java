@@ -0,0 +1,255 @@
+package com.jvmtop.monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sun.jvmstat.monitor.HostIdentifier;
+import sun.jvmstat.monitor.LongMonitor;
+import sun.jvmstat.monitor.Monitor;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredHost;
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.StringMonitor;
+import sun.jvmstat.monitor.VmIdentifier;
+import sun.jvmstat.perfdata.monitor.protocol.local.PerfDataFile;
+
+/**
+ * Reads the performance counters of a local jvm directly from its memory-mapped
+ * hsperfdata file (<code>/tmp/hsperfdata_&lt;user&gt;/&lt;pid&gt;</code>).
+ *
+ * Neither an attach nor any remote call is required, the monitors are resolved once
+ * and every read afterwards is a plain memory access.
+ * The process cpu time is not part of the hsperfdata counters, it is read from /proc (Linux only).
+ */
+class PerfCounters {
+    private static final String PERM_GENERATION = "perm";
+    // USER_HZ, the unit of utime / stime in /proc/<pid>/stat
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private final int pid;
+    private final File perfDataFile;
+    private final MonitoredHost host;
+    private final MonitoredVm vm;
+
+    private final LongMonitor hrtTicks;
+    private final long hrtFrequency;
+    private final LongMonitor[] heapUsed;
+    private final LongMonitor[] heapCapacity;
+    private final LongMonitor[] heapMaxCapacity;
+    private final LongMonitor[] nonHeapUsed;
+    private final LongMonitor[] nonHeapCapacity;
+    private final LongMonitor[] nonHeapMaxCapacity;
+    private final LongMonitor[] gcTime;
+    private final LongMonitor[] gcCount;
+    private final LongMonitor loadedClasses;
+    private final LongMonitor sharedLoadedClasses;
+    private final LongMonitor liveThreads;
+    private final Map<String, String> properties = new HashMap<>();
+
+    private RandomAccessFile procStat;
+    private final byte[] procStatBuffer = new byte[1024];
+
+    PerfCounters(int p_pid) throws MonitorException, java.net.URISyntaxException {
+        pid = p_pid;
+        perfDataFile = findPerfDataFile(pid);
+        host = MonitoredHost.getMonitoredHost(new HostIdentifier((String) null));
+        vm = host.getMonitoredVm(new VmIdentifier(String.valueOf(pid)));
+
+        hrtTicks = findLong("sun.os.hrt.ticks");
+        LongMonitor frequency = findLong("sun.os.hrt.frequency");
+        hrtFrequency = frequency != null && frequency.longValue() > 0? frequency.longValue() : 1000000000L;
+
+        List<LongMonitor> used = new ArrayList<>();
+        List<LongMonitor> capacity = new ArrayList<>();
+        List<LongMonitor> maxCapacity = new ArrayList<>();
+        List<LongMonitor> permUsed = new ArrayList<>();
+        List<LongMonitor> permCapacity = new ArrayList<>();
+        List<LongMonitor> permMaxCapacity = new ArrayList<>();
+        for (int gen = 0; findLong("sun.gc.generation." + gen + ".capacity") != null; gen++) {
+            String prefix = "sun.gc.generation." + gen;
+            boolean perm = PERM_GENERATION.equals(findString(prefix + ".name"));
+            (perm? permCapacity : capacity).add(findLong(prefix + ".capacity"));
+            (perm? permMaxCapacity : maxCapacity).add(findLong(prefix + ".maxCapacity"));
+            for (int space = 0; findLong(prefix + ".space." + space + ".used") != null; space++) {
+                (perm? permUsed : used).add(findLong(prefix + ".space." + space + ".used"));
+            }
+        }
+        // since java 8, class metadata is not part of the generations anymore
+        addIfPresent(permUsed, "sun.gc.metaspace.used");
+        addIfPresent(permCapacity, "sun.gc.metaspace.capacity");
+        addIfPresent(permMaxCapacity, "sun.gc.metaspace.maxCapacity");
+        heapUsed = toArray(used);
+        heapCapacity = toArray(capacity);
+        heapMaxCapacity = toArray(maxCapacity);
+        nonHeapUsed = toArray(permUsed);
+        nonHeapCapacity = toArray(permCapacity);
+        nonHeapMaxCapacity = toArray(permMaxCapacity);
+
+        List<LongMonitor> times = new ArrayList<>();
+        List<LongMonitor> counts = new ArrayList<>();
+        for (int collector = 0; findLong("sun.gc.collector." + collector + ".time") != null; collector++) {
+            times.add(findLong("sun.gc.collector." + collector + ".time"));
+            counts.add(findLong("sun.gc.collector." + collector + ".invocations"));
+        }
+        gcTime = toArray(times);
+        gcCount = toArray(counts);
+
+        loadedClasses = findLong("java.cls.loadedClasses");
+        sharedLoadedClasses = findLong("java.cls.sharedLoadedClasses");
+        liveThreads = findLong("java.threads.live");
+
+        for (String name : new String[] {"java.version", "java.vm.name", "java.vm.vendor", "java.vm.version"}) {
+            String value = findString("java.property." + name);
+            if (value != null) {
+                properties.put(name, value);
+            }
+        }
+        String command = findString("sun.rt.javaCommand");
+        if (command != null) {
+            properties.put("sun.java.command", command);
+        }
+        String dirName = perfDataFile != null? perfDataFile.getParentFile().getName() : "";
+        if (dirName.startsWith(PerfDataFile.dirNamePrefix)) {
+            properties.put("user.name", dirName.substring(PerfDataFile.dirNamePrefix.length()));
+        }
+    }
+
+    /**
+     * Searches the hsperfdata directories of all users for the file of the given jvm.
+     * (PerfDataFile.getFile(int) returns a path relative to the working directory on some jdks)
+     */
+    private static File findPerfDataFile(int pid) {
+        File[] dirs = new File(PerfDataFile.getTempDirectory()).listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File file = new File(dir, String.valueOf(pid));
+                if (dir.getName().startsWith(PerfDataFile.dirNamePrefix) && file.isFile()) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private LongMonitor findLong(String name) throws MonitorException {
+        Monitor monitor = vm.findByName(name);
+        return monitor instanceof LongMonitor? (LongMonitor) monitor : null;
+    }
+
+    private String findString(String name) throws MonitorException {
+        Monitor monitor = vm.findByName(name);
+        return monitor instanceof StringMonitor? ((StringMonitor) monitor).stringValue() : null;
+    }
+
+    private void addIfPresent(List<LongMonitor> list, String name) throws MonitorException {
+        LongMonitor monitor = findLong(name);
+        if (monitor != null) {
+            list.add(monitor);
+        }
+    }
+
+    private static LongMonitor[] toArray(List<LongMonitor> list) {
+        return list.toArray(new LongMonitor[list.size()]);
+    }
+
+    private static long sum(LongMonitor[] monitors) {
+        long sum = 0;
+        for (LongMonitor monitor : monitors) {
+            sum += monitor.longValue();
+        }
+        return sum;
+    }
+
+    /**
+     * The hsperfdata file is removed when the jvm exits, the mapping itself stays readable.
+     */
+    boolean isAlive() {
+        return perfDataFile == null || perfDataFile.exists();
+    }
+
+    long getUptime() { return ticksToMillis(hrtTicks != null? hrtTicks.longValue() : 0); }
+    long getHeapUsed() { return sum(heapUsed); }
+    long getHeapCommitted() { return sum(heapCapacity); }
+    long getHeapMax() { return sum(heapMaxCapacity); }
+    long getNonHeapUsed() { return sum(nonHeapUsed); }
+    long getNonHeapCommitted() { return sum(nonHeapCapacity); }
+    long getNonHeapMax() { return nonHeapMaxCapacity.length > 0? sum(nonHeapMaxCapacity) : -1; }
+    long getGcTime() { return ticksToMillis(sum(gcTime)); }
+    long getGcCount() { return sum(gcCount); }
+    long getThreadCount() { return liveThreads != null? liveThreads.longValue() : 0; }
+
+    long getTotalLoadedClassCount() {
+        return (loadedClasses != null? loadedClasses.longValue() : 0)
+                + (sharedLoadedClasses != null? sharedLoadedClasses.longValue() : 0);
+    }
+
+    /**
+     * Returns the jvm properties which are exported as counters, using the system property names.
+     */
+    Map<String, String> getProperties() { return properties; }
+
+    private long ticksToMillis(long ticks) {
+        return ticks * 1000 / hrtFrequency;
+    }
+
+    /**
+     * Returns the cpu time (user + system) in ns of the process or -1 if it cannot be determined.
+     */
+    long getProcessCpuTime() {
+        try {
+            if (procStat == null) {
+                File file = new File("/proc/" + pid + "/stat");
+                if (!file.canRead()) {
+                    return -1;
+                }
+                procStat = new RandomAccessFile(file, "r");
+            }
+            procStat.seek(0);
+            int length = procStat.read(procStatBuffer);
+            // the command name (2nd field) may contain blanks, start behind its closing bracket
+            int pos = length;
+            while (pos > 0 && procStatBuffer[pos - 1] != ')') {
+                pos--;
+            }
+            // utime and stime are the 14th and 15th field, i.e. the 12th and 13th behind the command name
+            long ticks = 0;
+            long value = 0;
+            int field = 0;
+            for (pos++; pos < length && field <= 12; pos++) {
+                byte b = procStatBuffer[pos];
+                if (b == ' ') {
+                    if (field >= 11) {
+                        ticks += value;
+                    }
+                    field++;
+                    value = 0;
+                } else if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                }
+            }
+            return ticks * (1000000000L / CLOCK_TICKS_PER_SECOND);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    void close() {
+        try {
+            host.detach(vm);
+        } catch (MonitorException e) {
+            // ignore
+        }
+        if (procStat != null) {
+            try {
+                procStat.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
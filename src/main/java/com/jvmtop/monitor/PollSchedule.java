@@ -0,0 +1,111 @@
+package com.jvmtop.monitor;
+
+/**
+ * Adapts how often the overview polls a jvm to how much its metrics change.
+ *
+ * A jvm whose metrics did not change since its previous poll (no cpu load, no collection,
+ * same thread count, flat heap) is polled at twice the previous interval, up to the max. interval.
+ * A change polls it every iteration again. The jvms ranked first by the overview are always polled,
+ * jvms which are not shown (beyond --vmlimit or the bottom of the terminal) back off up to four times
+ * the max. interval and only speed up gradually, unless their cpu or gc load spikes.
+ *
+ * Only the overview ranks the jvms, jvms which are never ranked (e.g. while they are exported
+ * with --format or --serve) are polled every iteration, so that every exported value is fresh.
+ */
+public class PollSchedule {
+    private static final double BUSY_CPU_LOAD = 0.01;
+    private static final double SPIKE_LOAD = 0.1;
+    private static final double HEAP_CHANGE = 0.01;
+    private static final int ALWAYS_POLLED_RANKS = 3;
+    private static final int HIDDEN_BACKOFF = 4;
+
+    private static long defaultMaxIntervalMillis = 30000;
+
+    private final long maxIntervalMillis = defaultMaxIntervalMillis;
+    private long interval;
+    private long lastPoll = Long.MIN_VALUE;
+    private boolean ranked;
+    private int rank;
+    private boolean visible = true;
+    private long gcCount = -1;
+    private long threadCount = -1;
+    private long heapUsed = -1;
+
+    /**
+     * Sets the max. interval used by all schedules created afterwards, 0 polls every jvm every iteration.
+     */
+    public static void setDefaultMaxInterval(long p_maxIntervalMillis) {
+        defaultMaxIntervalMillis = p_maxIntervalMillis;
+    }
+
+    /**
+     * @return true if the jvm has never been polled, is not ranked, is ranked first or its interval elapsed
+     */
+    public synchronized boolean isDue(long now) {
+        return maxIntervalMillis <= 0 || lastPoll == Long.MIN_VALUE || !ranked || rank < ALWAYS_POLLED_RANKS
+                || now - lastPoll >= interval;
+    }
+
+    /**
+     * Sets the position of the jvm in the overview.
+     * A hidden jvm which becomes visible is polled at least every max. interval again.
+     *
+     * @param p_visible false if the row of the jvm is not shown
+     */
+    public synchronized void setRank(int p_rank, boolean p_visible) {
+        ranked = true;
+        rank = p_rank;
+        if (p_visible && !visible) {
+            interval = Math.min(interval, maxIntervalMillis);
+        }
+        visible = p_visible;
+    }
+
+    /**
+     * Records a poll of the jvm and computes the interval until the next one from the change of its metrics.
+     */
+    public synchronized void polled(VMInfo vmInfo, long now) {
+        if (vmInfo.getState() != VMInfoState.ATTACHED) {
+            // reattaching is already delayed by the VMInfo
+            interval = 0;
+            lastPoll = now;
+            gcCount = -1;
+            return;
+        }
+        long heapMax = vmInfo.getHeapMax() > 0? vmInfo.getHeapMax() : vmInfo.getHeapSize();
+        boolean changed = vmInfo.getCpuLoad() >= BUSY_CPU_LOAD
+                || vmInfo.getGcCount() != gcCount
+                || vmInfo.getThreadCount() != threadCount
+                || Math.abs(vmInfo.getHeapUsed() - heapUsed) > heapMax * HEAP_CHANGE;
+        boolean spiking = vmInfo.getCpuLoad() >= SPIKE_LOAD || vmInfo.getGcLoad() >= SPIKE_LOAD;
+        gcCount = vmInfo.getGcCount();
+        threadCount = vmInfo.getThreadCount();
+        heapUsed = vmInfo.getHeapUsed();
+        polled(changed, spiking, now);
+    }
+
+    /**
+     * Records a poll of an attached jvm.
+     *
+     * @param p_changed true if the metrics of the jvm changed since its previous poll
+     * @param p_spiking true if its cpu or gc load spikes
+     */
+    synchronized void polled(boolean p_changed, boolean p_spiking, long now) {
+        if (!ranked || p_spiking || (p_changed && visible)) {
+            interval = 0;
+        } else if (p_changed) {
+            interval /= 2;
+        } else if (lastPoll != Long.MIN_VALUE) {
+            long limit = visible? maxIntervalMillis : maxIntervalMillis * HIDDEN_BACKOFF;
+            interval = Math.min(limit, interval > 0? interval * 2 : now - lastPoll);
+        }
+        lastPoll = now;
+    }
+
+    /**
+     * @return the current interval between two polls, 0 if polled every iteration
+     */
+    public synchronized long getInterval() {
+        return interval;
+    }
+}
@@ -0,0 +1,279 @@
+package com.jvmtop.monitor;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends the metrics of every iteration to a recording file, which can be replayed later with {@link Replayer}.
+ *
+ * The file is written through a memory-mapped window which is moved forward in chunks, so
+ * recording a tick costs little more than copying the values into memory.
+ * The format is a header followed by a sequence of records, each starting with a type byte:
+ * <ul>
+ * <li>{@link #TICK}: timestamp of an iteration, followed by the records of this iteration</li>
+ * <li>{@link #VM_INFO}: jvm-constant data of a jvm, written before its first sample</li>
+ * <li>{@link #VM_SAMPLE}: the metrics of a jvm</li>
+ * <li>{@link #THREADS}: the top threads of a jvm</li>
+ * </ul>
+ * The type byte of a record is written last, so a record which was cut off by a crash
+ * is seen as the end of the recording. The type byte of a tick is only written once all records
+ * of the iteration are complete (see {@link #endTick()}), so a replayer following the file never
+ * sees a partial iteration.
+ */
+public class Recorder {
+    static final long MAGIC = 0x4a564d544f505243L; // "JVMTOPRC"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 12;
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    static final byte END = 0;
+    static final byte TICK = 1;
+    static final byte VM_INFO = 2;
+    static final byte VM_SAMPLE = 3;
+    static final byte THREADS = 4;
+
+    private final FileChannel channel;
+    private final Set<VMInfo> described = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<VMInfo> recorded = Collections.newSetFromMap(new IdentityHashMap<>());
+    private MappedByteBuffer buffer;
+    private long mappedStart;
+    private int recordStart = -1;
+    // file position of the tick whose records are being written, -1 if none
+    private long tickStart = -1;
+
+    private Recorder(FileChannel p_channel, long p_end) throws IOException {
+        channel = p_channel;
+        map(p_end, CHUNK_SIZE);
+    }
+
+    /**
+     * Opens the given file for recording, appending to it if it already contains a recording.
+     */
+    public static Recorder open(Path path) throws IOException {
+        long end = HEADER_SIZE;
+        if (Files.exists(path) && Files.size(path) > 0) {
+            try (Replayer replayer = Replayer.open(path)) {
+                end = replayer.skipToEnd();
+            }
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Recorder recorder = new Recorder(channel, end);
+        if (end == HEADER_SIZE) {
+            recorder.buffer.putLong(0, MAGIC);
+            recorder.buffer.putInt(8, VERSION);
+        }
+        return recorder;
+    }
+
+    private void map(long start, int size) throws IOException {
+        long headerOffset = start == HEADER_SIZE? HEADER_SIZE : 0;
+        MappedByteBuffer previous = buffer;
+        mappedStart = start - headerOffset;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, mappedStart, size + headerOffset);
+        buffer.position((int) headerOffset);
+        if (previous != null) {
+            unmap(previous);
+        }
+    }
+
+    /**
+     * Starts the records of a new iteration, completing the previous one if {@link #endTick()} was not called.
+     */
+    public synchronized void beginTick(long timestamp) throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        endTick();
+        // jvms which were not recorded in the last tick are gone, their constants are written again if they come back
+        described.retainAll(recorded);
+        recorded.clear();
+        beginRecord(8);
+        buffer.putLong(timestamp);
+        // the type is written by endTick()
+        tickStart = mappedStart + recordStart;
+        recordStart = -1;
+    }
+
+    /**
+     * Marks the records of the current iteration as complete, which makes the iteration visible to replayers.
+     */
+    public synchronized void endTick() {
+        if (buffer == null || tickStart < 0) {
+            return;
+        }
+        // ensure() keeps the start of the current tick within the mapped window
+        buffer.put((int) (tickStart - mappedStart), TICK);
+        tickStart = -1;
+    }
+
+    /**
+     * Records the metrics of the given jvm, preceded by its jvm-constant data if not yet recorded.
+     */
+    public synchronized void record(VMInfo vmInfo) throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        if (!described.contains(vmInfo)) {
+            beginRecord(1024);
+            putInt(vmInfo.getVMId());
+            vmInfo.writeConstants(this);
+            endRecord(VM_INFO);
+            if (vmInfo.getState() == VMInfoState.ATTACHED) {
+                described.add(vmInfo);
+            }
+        }
+        recorded.add(vmInfo);
+        beginRecord(256);
+        putInt(vmInfo.getVMId());
+        vmInfo.writeSample(this);
+        endRecord(VM_SAMPLE);
+    }
+
+    /**
+     * Records the top threads determined by the last sample of the given sampler.
+     */
+    public synchronized void recordThreads(VMInfo vmInfo, ThreadSampler threadSampler) throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        beginRecord(1024);
+        putInt(vmInfo.getVMId());
+        threadSampler.writeTop(this);
+        endRecord(THREADS);
+    }
+
+    private void beginRecord(int expectedSize) throws IOException {
+        ensure(1 + expectedSize);
+        recordStart = buffer.position();
+        buffer.put(END);
+    }
+
+    private void endRecord(byte type) {
+        // the type is written last, so an incomplete record marks the end of the recording
+        buffer.put(recordStart, type);
+        recordStart = -1;
+    }
+
+    /**
+     * Makes sure that the given number of bytes fit into the mapped window,
+     * moving the window (and the tick and record being written) forward if required.
+     */
+    private void ensure(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return;
+        }
+        int keepFrom = tickStart >= 0? (int) (tickStart - mappedStart) : recordStart;
+        int keep = keepFrom >= 0? buffer.position() - keepFrom : 0;
+        long start = mappedStart + buffer.position() - keep;
+        byte[] partial = new byte[keep];
+        if (keep > 0) {
+            buffer.position(keepFrom);
+            buffer.get(partial);
+        }
+        map(start, Math.max(CHUNK_SIZE, keep + size));
+        if (recordStart >= 0) {
+            recordStart = buffer.position() + recordStart - keepFrom;
+        }
+        buffer.put(partial);
+    }
+
+    void putByte(byte value) throws IOException {
+        ensure(1);
+        buffer.put(value);
+    }
+
+    void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    void putDouble(double value) throws IOException {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Writes a string as length and UTF-8 bytes, null as length -1.
+     */
+    void putString(String value) throws IOException {
+        if (value == null) {
+            putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Completes the current iteration, cuts the file to the recorded data and closes it, further records are ignored.
+     */
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        endTick();
+        long end = mappedStart + buffer.position();
+        buffer.force();
+        // a mapped file cannot be truncated on Windows
+        unmap(buffer);
+        buffer = null;
+        try {
+            channel.truncate(end);
+        } catch (IOException e) {
+            // the zeros after the end are read as the end of the recording
+            Logger.getLogger("jvmtop").log(Level.FINE, "could not truncate the recording", e);
+        }
+        channel.close();
+    }
+
+    /**
+     * Releases the mapping of the given buffer right away instead of when it is garbage collected.
+     * The buffer must not be used afterwards.
+     */
+    static void unmap(ByteBuffer p_buffer) {
+        if (!(p_buffer instanceof MappedByteBuffer)) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // java 9 and later
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), p_buffer);
+            } catch (NoSuchMethodException e) {
+                // java 8
+                Method cleanerMethod = p_buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(p_buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            Logger.getLogger("jvmtop").log(Level.FINE, "could not unmap buffer", e);
+        }
+    }
+}
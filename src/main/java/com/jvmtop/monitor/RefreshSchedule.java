@@ -0,0 +1,77 @@
+package com.jvmtop.monitor;
+
+/**
+ * Keeps track of when the different classes of metrics of a jvm have to be refreshed.
+ *
+ * Each VMInfo owns its own schedule, the intervals are taken from the defaults
+ * which can be configured once at startup.
+ */
+public class RefreshSchedule {
+
+    /**
+     * Classes of metrics, grouped by how often their values change.
+     */
+    public enum Tier {
+        /**
+         * jvm-constant data (version, user, system properties, input arguments), fetched once per connection
+         */
+        CONSTANT,
+        /**
+         * slowly changing data (class counts, peak / started threads, deadlocks)
+         */
+        SLOW,
+        /**
+         * fast changing data (cpu, gc, heap, thread count)
+         */
+        FAST
+    }
+
+    private static long defaultSlowIntervalMillis = 10000;
+    private static long defaultFastIntervalMillis = 0;
+
+    private final long[] intervals = new long[Tier.values().length];
+    private final long[] lastRefresh = new long[Tier.values().length];
+
+    public RefreshSchedule() {
+        intervals[Tier.CONSTANT.ordinal()] = Long.MAX_VALUE;
+        intervals[Tier.SLOW.ordinal()] = defaultSlowIntervalMillis;
+        intervals[Tier.FAST.ordinal()] = defaultFastIntervalMillis;
+        reset();
+    }
+
+    /**
+     * Sets the intervals used by all schedules created afterwards.
+     */
+    public static void setDefaultIntervals(long slowIntervalMillis, long fastIntervalMillis) {
+        defaultSlowIntervalMillis = slowIntervalMillis;
+        defaultFastIntervalMillis = fastIntervalMillis;
+    }
+
+    /**
+     * @return true if the metrics of the given tier have never been fetched or their interval elapsed
+     */
+    public boolean isDue(Tier tier, long now) {
+        long last = lastRefresh[tier.ordinal()];
+        return last == Long.MIN_VALUE || now - last >= intervals[tier.ordinal()];
+    }
+
+    /**
+     * Records that the metrics of the given tier have been fetched.
+     */
+    public void refreshed(Tier tier, long now) {
+        lastRefresh[tier.ordinal()] = now;
+    }
+
+    /**
+     * Marks all tiers as due, e.g. after a reconnect.
+     */
+    public void reset() {
+        for (int i = 0; i < lastRefresh.length; i++) {
+            lastRefresh[i] = Long.MIN_VALUE;
+        }
+    }
+
+    public long getInterval(Tier tier) {
+        return intervals[tier.ordinal()];
+    }
+}
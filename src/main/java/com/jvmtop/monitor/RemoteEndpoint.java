@@ -0,0 +1,85 @@
+package com.jvmtop.monitor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jvmtop.openjdk.tools.ProxyClient;
+
+/**
+ * A remote jvm monitored over JMX, given as "host:port" of its RMI registry
+ * or as a "service:jmx:" url, optionally with user name and password.
+ */
+public class RemoteEndpoint {
+    private static final String URL_PREFIX = "service:jmx:";
+
+    private final String address;
+    private final String userName;
+    private final String password;
+
+    public RemoteEndpoint(String p_address, String p_userName, String p_password) {
+        if (!p_address.startsWith(URL_PREFIX)) {
+            int colon = p_address.lastIndexOf(':');
+            if (colon <= 0 || !isPort(p_address.substring(colon + 1))) {
+                throw new IllegalArgumentException("Invalid jmx endpoint " + p_address + ", use host:port or a service:jmx: url");
+            }
+        }
+        address = p_address;
+        userName = p_userName;
+        password = p_password;
+    }
+
+    /**
+     * Reads the endpoints from a file with one endpoint per line: the address, optionally followed
+     * by user name and password separated by whitespace. Empty lines and lines starting with # are ignored.
+     */
+    public static List<RemoteEndpoint> readAll(String p_file) throws IOException {
+        List<RemoteEndpoint> endpoints = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(p_file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                endpoints.add(new RemoteEndpoint(fields[0], fields.length > 1? fields[1] : null,
+                        fields.length > 2? fields[2] : null));
+            }
+        }
+        return endpoints;
+    }
+
+    private static boolean isPort(String value) {
+        if (value.isEmpty() || value.length() > 5) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getAddress() { return address; }
+
+    /**
+     * @return the cached proxy client of this endpoint, its connection is reused across updates
+     */
+    ProxyClient getProxyClient() throws IOException {
+        if (address.startsWith(URL_PREFIX)) {
+            return ProxyClient.getProxyClient(address, userName, password);
+        }
+        int colon = address.lastIndexOf(':');
+        return ProxyClient.getProxyClient(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)),
+                userName, password);
+    }
+
+    @Override
+    public String toString() { return address; }
+}
@@ -0,0 +1,244 @@
+package com.jvmtop.monitor;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a recording written by {@link Recorder}, one iteration (tick) at a time.
+ *
+ * The metrics are restored into VMInfo and ThreadSampler objects which are not connected
+ * to any jvm, so the views can display them like live data. The file is read through
+ * memory-mapped windows; a file which is still being recorded can be followed,
+ * as the recorder marks a tick only once all of its records are written.
+ */
+public class Replayer implements Closeable {
+    private final FileChannel channel;
+    private final Map<Integer, VMInfo> vmInfos = new HashMap<>();
+    private final Map<Integer, ThreadSampler> threadSamplers = new HashMap<>();
+    private final List<VMInfo> sampled = new ArrayList<>();
+    private final List<ThreadSampler> sampledThreads = new ArrayList<>();
+    private ByteBuffer window = ByteBuffer.allocate(0);
+    private long windowStart;
+    private long timestamp;
+
+    private Replayer(FileChannel p_channel) {
+        channel = p_channel;
+    }
+
+    public static Replayer open(Path path) throws IOException {
+        Replayer replayer = new Replayer(FileChannel.open(path, StandardOpenOption.READ));
+        try {
+            if (replayer.getLong() != Recorder.MAGIC) {
+                throw new IOException(path + " is not a jvmtop recording");
+            }
+            int version = replayer.getInt();
+            if (version != Recorder.VERSION) {
+                throw new IOException("unsupported version " + version + " of recording " + path);
+            }
+        } catch (IOException e) {
+            replayer.close();
+            throw e;
+        }
+        return replayer;
+    }
+
+    /**
+     * Reads the records of the next tick.
+     *
+     * @return false if the end of the recording was reached
+     */
+    public boolean next() throws IOException {
+        long mark = position();
+        if (readType() != Recorder.TICK) {
+            seek(mark);
+            return false;
+        }
+        timestamp = getLong();
+        sampled.clear();
+        sampledThreads.clear();
+        while (true) {
+            mark = position();
+            try {
+                switch (readType()) {
+                    case Recorder.VM_INFO:
+                        getVMInfoOrCreate(getInt()).readConstants(this);
+                        break;
+                    case Recorder.VM_SAMPLE:
+                        VMInfo vmInfo = getVMInfoOrCreate(getInt());
+                        vmInfo.readSample(this);
+                        sampled.add(vmInfo);
+                        break;
+                    case Recorder.THREADS:
+                        int vmid = getInt();
+                        ThreadSampler threadSampler = threadSamplers.get(vmid);
+                        if (threadSampler == null) {
+                            threadSampler = new ThreadSampler(getVMInfoOrCreate(vmid));
+                            threadSamplers.put(vmid, threadSampler);
+                        }
+                        threadSampler.readTop(this);
+                        sampledThreads.add(threadSampler);
+                        break;
+                    default:
+                        // the next tick or the end of the recording
+                        seek(mark);
+                        return true;
+                }
+            } catch (EOFException e) {
+                // the file was cut off within a record
+                seek(mark);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Skips all complete ticks.
+     *
+     * @return the file position after the last complete tick
+     */
+    long skipToEnd() throws IOException {
+        while (next()) {
+            // nothing to do
+        }
+        return position();
+    }
+
+    /**
+     * @return the timestamp of the current tick
+     */
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * @return the milliseconds between the current and the next tick, -1 if there is no next tick (yet)
+     */
+    public long getDelayToNextTick() throws IOException {
+        long mark = position();
+        try {
+            return readType() == Recorder.TICK? getLong() - timestamp : -1;
+        } catch (EOFException e) {
+            return -1;
+        } finally {
+            seek(mark);
+        }
+    }
+
+    /**
+     * @return the jvms sampled in the current tick
+     */
+    public List<VMInfo> getVMInfos() { return sampled; }
+
+    /**
+     * @return the given jvm if it was sampled in the current tick, otherwise null
+     */
+    public VMInfo getVMInfo(int vmid) {
+        VMInfo vmInfo = vmInfos.get(vmid);
+        return sampled.contains(vmInfo)? vmInfo : null;
+    }
+
+    /**
+     * @return the top threads of the given jvm if they were recorded in the current tick, otherwise null
+     */
+    public ThreadSampler getThreadSampler(int vmid) {
+        ThreadSampler threadSampler = threadSamplers.get(vmid);
+        return sampledThreads.contains(threadSampler)? threadSampler : null;
+    }
+
+    private VMInfo getVMInfoOrCreate(int vmid) {
+        VMInfo vmInfo = vmInfos.get(vmid);
+        if (vmInfo == null) {
+            vmInfo = VMInfo.createReplayed(vmid);
+            vmInfos.put(vmid, vmInfo);
+        }
+        return vmInfo;
+    }
+
+    private byte readType() throws IOException {
+        try {
+            return getByte();
+        } catch (EOFException e) {
+            return Recorder.END;
+        }
+    }
+
+    private long position() {
+        return windowStart + window.position();
+    }
+
+    private void seek(long position) {
+        if (position >= windowStart && position <= windowStart + window.limit()) {
+            window.position((int) (position - windowStart));
+        } else {
+            Recorder.unmap(window);
+            window = ByteBuffer.allocate(0);
+            windowStart = position;
+        }
+    }
+
+    /**
+     * Makes sure that the given number of bytes can be read from the window,
+     * mapping the next part of the file if required.
+     */
+    private void ensure(int size) throws IOException {
+        if (window.remaining() >= size) {
+            return;
+        }
+        long position = position();
+        long available = channel.size() - position;
+        if (available < size) {
+            throw new EOFException();
+        }
+        ByteBuffer previous = window;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(available, Math.max(Recorder.CHUNK_SIZE, size)));
+        Recorder.unmap(previous);
+        windowStart = position;
+    }
+
+    byte getByte() throws IOException {
+        ensure(1);
+        return window.get();
+    }
+
+    int getInt() throws IOException {
+        ensure(4);
+        return window.getInt();
+    }
+
+    long getLong() throws IOException {
+        ensure(8);
+        return window.getLong();
+    }
+
+    double getDouble() throws IOException {
+        ensure(8);
+        return window.getDouble();
+    }
+
+    String getString() throws IOException {
+        int length = getInt();
+        if (length < 0) {
+            return null;
+        }
+        ensure(length);
+        byte[] bytes = new byte[length];
+        window.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Recorder.unmap(window);
+        window = ByteBuffer.allocate(0);
+        channel.close();
+    }
+}
@@ -0,0 +1,283 @@
+package com.jvmtop.monitor;
+
+import java.io.IOException;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Samples the cpu times of all threads of a jvm and determines the top cpu-consuming threads.
+ *
+ * Each sample costs only a few remote calls, independent of the number of threads:
+ * one for the thread ids, one for the cpu times of all threads (if the jvm supports the bulk operations
+ * of com.sun.management.ThreadMXBean), one each for their user times and allocated bytes if supported
+ * and one for the ThreadInfos of the top threads.
+ * The top threads are selected with a bounded heap instead of sorting all threads,
+ * the per-thread bookkeeping is kept in the ThreadStatsTable of the VMInfo.
+ */
+public class ThreadSampler {
+    /**
+     * The metric the top threads are selected by.
+     */
+    public enum Order {
+        /**
+         * cpu time used since the previous sample
+         */
+        CPU,
+        /**
+         * bytes allocated since the previous sample
+         */
+        ALLOC
+    }
+
+    private static final long[] NO_IDS = new long[0];
+    private static final Thread.State[] THREAD_STATES = Thread.State.values();
+
+    private final VMInfo vmInfo;
+    private Order order = Order.CPU;
+    private Order sampledOrder = Order.CPU;
+    private long lastSampleTime;
+
+    private int sampledThreadCount;
+    private int topCount;
+    private final TopK topK = new TopK(32);
+    private long[] topIds = NO_IDS;
+    private long[] topDeltaCpuTimes = NO_IDS;
+    private long[] topCpuTimes = NO_IDS;
+    private long[] topAllocationRates = NO_IDS;
+    private String[] topNames = new String[0];
+    private Thread.State[] topStates = new Thread.State[0];
+    private long[] topLockOwnerIds = NO_IDS;
+
+    public ThreadSampler(VMInfo p_vmInfo) {
+        vmInfo = p_vmInfo;
+    }
+
+    public void setOrder(Order p_order) {
+        order = p_order;
+    }
+
+    /**
+     * Takes a new sample and selects the top threads according to their cpu usage
+     * (or allocated bytes) since the last sample. The allocated bytes of all threads
+     * also give the allocation rate of the jvm, which the VMInfo then does not fetch itself.
+     *
+     * @param limit max. number of top threads, a negative value selects all threads
+     */
+    public void sample(int limit) throws Exception {
+        ThreadMXBean threadMXBean = vmInfo.getThreadMXBean();
+        long[] ids = threadMXBean.getAllThreadIds();
+        long[] cpuTimes = getThreadCpuTimes(ids);
+        long[] userTimes = getThreadUserTimes(ids);
+        long[] allocatedBytes = getThreadAllocatedBytes(ids);
+
+        long now = System.currentTimeMillis();
+        long elapsed = lastSampleTime > 0? now - lastSampleTime : 0;
+        lastSampleTime = now;
+        // without allocated bytes no thread could be ranked by them
+        sampledOrder = allocatedBytes != null? order : Order.CPU;
+        long allocated = 0;
+        ThreadStatsTable threadStats = vmInfo.getThreadStats();
+        threadStats.beginSample();
+        topK.reset(limit < 0? ids.length : limit);
+        for (int i = 0; i < ids.length; i++) {
+            if (cpuTimes[i] < 0) {
+                // thread died or cpu time measurement is disabled
+                continue;
+            }
+            int slot = threadStats.record(ids[i], cpuTimes[i], userTimes != null? userTimes[i] : -1, now);
+            if (allocatedBytes != null) {
+                threadStats.recordAllocatedBytes(ids[i], allocatedBytes[i], now);
+                allocated += Math.max(0, threadStats.getDeltaAllocatedBytes(slot));
+            }
+            long delta = sampledOrder == Order.ALLOC? threadStats.getDeltaAllocatedBytes(slot) : threadStats.getDeltaCpuTime(slot);
+            if (delta >= 0) {
+                // the index into ids is used as id, ties are ranked in thread id order
+                topK.offer(i, delta);
+            }
+        }
+        threadStats.endSample();
+        sampledThreadCount = threadStats.size();
+        if (allocatedBytes != null) {
+            vmInfo.setSampledAllocationRate(elapsed > 0? allocated * 1000 / elapsed : -1);
+        }
+
+        topK.sort();
+        resize(topK.size());
+        for (int i = 0; i < topCount; i++) {
+            int index = (int) topK.getId(i);
+            int slot = threadStats.find(ids[index]);
+            long deltaAllocated = threadStats.getDeltaAllocatedBytes(slot);
+            topIds[i] = ids[index];
+            topDeltaCpuTimes[i] = threadStats.getDeltaCpuTime(slot);
+            topCpuTimes[i] = cpuTimes[index];
+            topAllocationRates[i] = deltaAllocated >= 0 && elapsed > 0? deltaAllocated * 1000 / elapsed : -1;
+        }
+        ThreadInfo[] topInfos = topCount > 0?
+                threadMXBean.getThreadInfo(topCount == topIds.length? topIds : Arrays.copyOf(topIds, topCount), 0)
+                : new ThreadInfo[0];
+        updateThreadNames(threadStats, topInfos);
+        for (int i = 0; i < topCount; i++) {
+            ThreadInfo info = topInfos[i];
+            topNames[i] = info != null? info.getThreadName() : getThreadName(topIds[i]);
+            topStates[i] = info != null? info.getThreadState() : Thread.State.TERMINATED;
+            topLockOwnerIds[i] = info != null? info.getLockOwnerId() : -1;
+        }
+    }
+
+    /**
+     * Grows the arrays of the top threads if needed, they are kept when fewer threads are selected.
+     */
+    private void resize(int count) {
+        topCount = count;
+        if (topIds.length < count) {
+            topIds = new long[count];
+            topDeltaCpuTimes = new long[count];
+            topCpuTimes = new long[count];
+            topAllocationRates = new long[count];
+            topNames = new String[count];
+            topStates = new Thread.State[count];
+            topLockOwnerIds = new long[count];
+        }
+    }
+
+    /**
+     * Returns the cpu times of the given threads, using a single remote call if possible.
+     */
+    private long[] getThreadCpuTimes(long[] ids) throws Exception {
+        com.sun.management.ThreadMXBean sunThreadMXBean = vmInfo.getProxyClient().getSunThreadMXBean();
+        if (sunThreadMXBean != null) {
+            return sunThreadMXBean.getThreadCpuTime(ids);
+        }
+        ThreadMXBean threadMXBean = vmInfo.getThreadMXBean();
+        long[] cpuTimes = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            cpuTimes[i] = threadMXBean.getThreadCpuTime(ids[i]);
+        }
+        return cpuTimes;
+    }
+
+    /**
+     * Returns the user times of the given threads if they can be fetched with a single remote call, otherwise null.
+     */
+    private long[] getThreadUserTimes(long[] ids) throws Exception {
+        com.sun.management.ThreadMXBean sunThreadMXBean = vmInfo.getProxyClient().getSunThreadMXBean();
+        return sunThreadMXBean != null? sunThreadMXBean.getThreadUserTime(ids) : null;
+    }
+
+    /**
+     * Returns the bytes allocated by the given threads if they can be fetched with a single remote call, otherwise null.
+     */
+    private long[] getThreadAllocatedBytes(long[] ids) throws Exception {
+        return vmInfo.isAllocationSupported()?
+                vmInfo.getProxyClient().getSunThreadMXBean().getThreadAllocatedBytes(ids) : null;
+    }
+
+    /**
+     * Thread names do not change, so they are kept for all alive threads
+     * and used if a ThreadInfo could not be retrieved anymore.
+     * The number of BLOCKED threads is passed on to the deadlock detection.
+     */
+    private void updateThreadNames(ThreadStatsTable threadStats, ThreadInfo[] topInfos) {
+        int blocked = 0;
+        for (ThreadInfo info : topInfos) {
+            if (info != null) {
+                int slot = threadStats.find(info.getThreadId());
+                if (slot >= 0) {
+                    threadStats.setName(slot, info.getThreadName());
+                }
+                if (info.getThreadState() == Thread.State.BLOCKED) {
+                    blocked++;
+                }
+            }
+        }
+        vmInfo.reportBlockedThreads(blocked);
+    }
+
+    /**
+     * @return number of threads which were included in the last sample
+     */
+    public int getSampledThreadCount() { return sampledThreadCount; }
+
+    /**
+     * @return number of top threads selected by the last sample
+     */
+    public int getTopCount() { return topCount; }
+
+    public long getTopId(int index) { return topIds[index]; }
+
+    /**
+     * @return cpu time in ns used by the given top thread since the previous sample
+     */
+    public long getTopDeltaCpuTime(int index) { return topDeltaCpuTimes[index]; }
+
+    /**
+     * @return total cpu time in ns used by the given top thread
+     */
+    public long getTopCpuTime(int index) { return topCpuTimes[index]; }
+
+    /**
+     * @return bytes per second allocated by the given top thread since the previous sample, -1 if not available
+     */
+    public long getTopAllocationRate(int index) { return topAllocationRates[index]; }
+
+    /**
+     * @return the order of the last sample, CPU if ALLOC was requested but the jvm does not report allocated bytes
+     */
+    public Order getOrder() { return sampledOrder; }
+
+    /**
+     * @return the name of the given top thread, null if the thread died before its name was known
+     */
+    public String getTopThreadName(int index) { return topNames[index]; }
+
+    /**
+     * @return the state of the given top thread, TERMINATED if the thread died meanwhile
+     */
+    public Thread.State getTopThreadState(int index) { return topStates[index]; }
+
+    /**
+     * @return the id of the thread holding the lock the given top thread is blocked on, -1 if none
+     */
+    public long getTopLockOwnerId(int index) { return topLockOwnerIds[index]; }
+
+    /**
+     * @return the cached name of the given thread or null if unknown
+     */
+    public String getThreadName(long tid) {
+        ThreadStatsTable threadStats = vmInfo.getThreadStats();
+        int slot = threadStats.find(tid);
+        return slot >= 0? threadStats.getName(slot) : null;
+    }
+
+    /**
+     * Writes the top threads of the last sample to a recording.
+     */
+    void writeTop(Recorder recorder) throws IOException {
+        recorder.putInt(sampledThreadCount);
+        recorder.putInt(topCount);
+        for (int i = 0; i < topCount; i++) {
+            recorder.putLong(topIds[i]);
+            recorder.putLong(topDeltaCpuTimes[i]);
+            recorder.putLong(topCpuTimes[i]);
+            recorder.putLong(topAllocationRates[i]);
+            recorder.putByte((byte) topStates[i].ordinal());
+            recorder.putLong(topLockOwnerIds[i]);
+            recorder.putString(topNames[i]);
+        }
+    }
+
+    void readTop(Replayer replayer) throws IOException {
+        sampledThreadCount = replayer.getInt();
+        resize(replayer.getInt());
+        for (int i = 0; i < topCount; i++) {
+            topIds[i] = replayer.getLong();
+            topDeltaCpuTimes[i] = replayer.getLong();
+            topCpuTimes[i] = replayer.getLong();
+            topAllocationRates[i] = replayer.getLong();
+            topStates[i] = THREAD_STATES[replayer.getByte()];
+            topLockOwnerIds[i] = replayer.getLong();
+            topNames[i] = replayer.getString();
+        }
+    }
+}
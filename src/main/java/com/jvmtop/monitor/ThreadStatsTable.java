@@ -0,0 +1,250 @@
+package com.jvmtop.monitor;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread statistics of a jvm, keyed by thread id.
+ *
+ * The table uses open addressing with linear probing over primitive arrays, so recording
+ * a sample neither boxes thread ids and cpu times nor allocates per thread.
+ * Each sample is enclosed in {@link #beginSample()} and {@link #endSample()};
+ * slots of threads which were not recorded in a sample (because they died) are
+ * recycled at its end using backward-shift deletion, so no tombstones accumulate.
+ */
+public class ThreadStatsTable {
+    private static final long EMPTY = 0; // thread ids are always positive
+    private static final int MIN_CAPACITY = 64;
+
+    private long[] tids;
+    private long[] cpuTimes;
+    private long[] deltaCpuTimes;
+    private long[] userTimes;
+    private long[] allocatedBytes;
+    private long[] deltaAllocatedBytes;
+    private long[] firstSeen;
+    private int[] epochs;
+    private String[] names;
+    private int mask;
+    private int size;
+    private int epoch;
+
+    public ThreadStatsTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        tids = new long[capacity];
+        cpuTimes = new long[capacity];
+        deltaCpuTimes = new long[capacity];
+        userTimes = new long[capacity];
+        allocatedBytes = new long[capacity];
+        deltaAllocatedBytes = new long[capacity];
+        firstSeen = new long[capacity];
+        epochs = new int[capacity];
+        names = new String[capacity];
+        mask = capacity - 1;
+    }
+
+    public void beginSample() {
+        epoch++;
+    }
+
+    /**
+     * Records the current cpu and user time of a thread.
+     *
+     * @param now timestamp used as first-seen time of new threads
+     * @return the slot of the thread, valid until the end of the sample
+     */
+    public int record(long tid, long cpuTime, long userTime, long now) {
+        int slot = find(tid);
+        if (slot < 0) {
+            slot = insert(tid, now);
+        } else {
+            deltaCpuTimes[slot] = cpuTime - cpuTimes[slot];
+        }
+        cpuTimes[slot] = cpuTime;
+        userTimes[slot] = userTime;
+        epochs[slot] = epoch;
+        return slot;
+    }
+
+    /**
+     * Records the number of bytes allocated by a thread so far.
+     *
+     * @param now timestamp used as first-seen time of new threads
+     * @return the slot of the thread, valid until the end of the sample
+     */
+    public int recordAllocatedBytes(long tid, long bytes, long now) {
+        int slot = find(tid);
+        if (slot < 0) {
+            slot = insert(tid, now);
+        } else {
+            deltaAllocatedBytes[slot] = allocatedBytes[slot] >= 0 && bytes >= 0? bytes - allocatedBytes[slot] : -1;
+        }
+        allocatedBytes[slot] = bytes;
+        epochs[slot] = epoch;
+        return slot;
+    }
+
+    private int insert(long tid, long now) {
+        if (size + 1 > tids.length / 2) {
+            grow();
+        }
+        int slot = insertionSlot(tid);
+        tids[slot] = tid;
+        firstSeen[slot] = now;
+        cpuTimes[slot] = 0;
+        deltaCpuTimes[slot] = -1;
+        userTimes[slot] = -1;
+        allocatedBytes[slot] = -1;
+        deltaAllocatedBytes[slot] = -1;
+        names[slot] = null;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Removes all threads which were not recorded in the current sample.
+     */
+    public void endSample() {
+        for (int i = 0; i < tids.length; i++) {
+            while (tids[i] != EMPTY && epochs[i] != epoch) {
+                delete(i);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(tids, EMPTY);
+        Arrays.fill(names, null);
+        size = 0;
+    }
+
+    /**
+     * @return number of threads in the table
+     */
+    public int size() { return size; }
+
+    /**
+     * @return the slot of the given thread or -1 if it is not in the table
+     */
+    public int find(long tid) {
+        for (int i = hash(tid); ; i = (i + 1) & mask) {
+            if (tids[i] == tid) {
+                return i;
+            }
+            if (tids[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public long getTid(int slot) { return tids[slot]; }
+
+    /**
+     * @return total cpu time in ns of the thread
+     */
+    public long getCpuTime(int slot) { return cpuTimes[slot]; }
+
+    /**
+     * @return cpu time in ns used since the previous sample, -1 if the thread is new
+     */
+    public long getDeltaCpuTime(int slot) { return deltaCpuTimes[slot]; }
+
+    /**
+     * @return total user time in ns of the thread, -1 if not available
+     */
+    public long getUserTime(int slot) { return userTimes[slot]; }
+
+    /**
+     * @return total bytes allocated by the thread, -1 if not recorded
+     */
+    public long getAllocatedBytes(int slot) { return allocatedBytes[slot]; }
+
+    /**
+     * @return bytes allocated since the previous sample, -1 if the thread is new or not recorded
+     */
+    public long getDeltaAllocatedBytes(int slot) { return deltaAllocatedBytes[slot]; }
+
+    /**
+     * @return timestamp of the sample in which the thread was seen first
+     */
+    public long getFirstSeen(int slot) { return firstSeen[slot]; }
+
+    public String getName(int slot) { return names[slot]; }
+
+    public void setName(int slot, String name) { names[slot] = name; }
+
+    private int hash(long tid) {
+        long h = tid * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int insertionSlot(long tid) {
+        int i = hash(tid);
+        while (tids[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldTids = tids;
+        long[] oldCpuTimes = cpuTimes;
+        long[] oldDeltaCpuTimes = deltaCpuTimes;
+        long[] oldUserTimes = userTimes;
+        long[] oldAllocatedBytes = allocatedBytes;
+        long[] oldDeltaAllocatedBytes = deltaAllocatedBytes;
+        long[] oldFirstSeen = firstSeen;
+        int[] oldEpochs = epochs;
+        String[] oldNames = names;
+        allocate(oldTids.length * 2);
+        for (int i = 0; i < oldTids.length; i++) {
+            if (oldTids[i] != EMPTY) {
+                int slot = insertionSlot(oldTids[i]);
+                move(slot, oldTids[i], oldCpuTimes[i], oldDeltaCpuTimes[i], oldUserTimes[i],
+                        oldAllocatedBytes[i], oldDeltaAllocatedBytes[i], oldFirstSeen[i], oldEpochs[i], oldNames[i]);
+            }
+        }
+    }
+
+    /**
+     * Empties the given slot and shifts following entries of the probe sequence back,
+     * so that lookups never stop early at the freed slot.
+     */
+    private void delete(int hole) {
+        names[hole] = null;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            long tid = tids[i];
+            if (tid == EMPTY) {
+                break;
+            }
+            int home = hash(tid);
+            // the entry may move to the hole if its home slot is not within (hole, i]
+            boolean movable = hole <= i? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                move(hole, tid, cpuTimes[i], deltaCpuTimes[i], userTimes[i],
+                        allocatedBytes[i], deltaAllocatedBytes[i], firstSeen[i], epochs[i], names[i]);
+                names[i] = null;
+                hole = i;
+            }
+        }
+        tids[hole] = EMPTY;
+        size--;
+    }
+
+    private void move(int slot, long tid, long cpuTime, long deltaCpuTime, long userTime,
+                      long allocated, long deltaAllocated, long firstSeenTime, int slotEpoch, String name) {
+        tids[slot] = tid;
+        cpuTimes[slot] = cpuTime;
+        deltaCpuTimes[slot] = deltaCpuTime;
+        userTimes[slot] = userTime;
+        allocatedBytes[slot] = allocated;
+        deltaAllocatedBytes[slot] = deltaAllocated;
+        firstSeen[slot] = firstSeenTime;
+        epochs[slot] = slotEpoch;
+        names[slot] = name;
+    }
+}
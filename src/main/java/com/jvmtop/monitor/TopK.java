@@ -0,0 +1,116 @@
+package com.jvmtop.monitor;
+
+/**
+ * Selects the k entries with the highest scores out of a stream of (id, score) pairs.
+ *
+ * The entries are kept in a bounded min-heap over primitive arrays, so selecting
+ * the top k of n entries takes O(n log k) and does not allocate once the arrays
+ * have grown to the required capacity. Entries with equal scores are ranked by
+ * ascending id, which keeps the order stable between refreshes.
+ *
+ * Usage: {@link #reset(int)}, {@link #offer(long, long)} for all entries, {@link #sort()},
+ * then read the result with {@link #getId(int)} and {@link #getScore(int)}.
+ */
+public class TopK {
+    private long[] ids;
+    private long[] scores;
+    private int capacity;
+    private int size;
+
+    public TopK(int initialCapacity) {
+        ids = new long[Math.max(1, initialCapacity)];
+        scores = new long[ids.length];
+    }
+
+    /**
+     * Removes all entries and sets the number of entries to keep.
+     */
+    public void reset(int k) {
+        if (k > ids.length) {
+            ids = new long[k];
+            scores = new long[k];
+        }
+        capacity = Math.max(0, k);
+        size = 0;
+    }
+
+    /**
+     * Adds an entry if it ranks among the top k entries offered since the last reset.
+     */
+    public void offer(long id, long score) {
+        if (size < capacity) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (capacity > 0 && ranksBelow(ids[0], scores[0], id, score)) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Sorts the selected entries by descending score.
+     * No further entries may be offered until the next reset.
+     */
+    public void sort() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int size() { return size; }
+
+    public long getId(int index) { return ids[index]; }
+
+    public long getScore(int index) { return scores[index]; }
+
+    /**
+     * @return true if entry 1 ranks below entry 2
+     */
+    private static boolean ranksBelow(long id1, long score1, long id2, long score2) {
+        return score1 < score2 || (score1 == score2 && id1 > id2);
+    }
+
+    private boolean ranksBelow(int i, int j) {
+        return ranksBelow(ids[i], scores[i], ids[j], scores[j]);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksBelow(index, parent)) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int end) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && ranksBelow(child + 1, child)) {
+                child++;
+            }
+            if (!ranksBelow(child, index)) {
+                return;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        long score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
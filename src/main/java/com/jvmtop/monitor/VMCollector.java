@@ -0,0 +1,164 @@
+package com.jvmtop.monitor;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Updates the metrics of several VMInfo objects concurrently.
+ *
+ * At most <code>parallelism</code> jvms are updated at the same time.
+ * A jvm which does not finish its update within the deadline is marked as stale
+ * and keeps its last values; its update is not restarted until the pending one has finished.
+ * Jvms whose PollSchedule is not due are skipped and keep their last values as well.
+ *
+ * A snapshot of each jvm is taken before its update is submitted. As long as the update
+ * is running, the snapshot is returned in place of the jvm, so views never read
+ * the fields which are being written by a collector thread.
+ */
+public class VMCollector {
+    private static final Logger logger = Logger.getLogger("jvmtop");
+
+    private final ExecutorService executor;
+    private final long deadlineNanos;
+    private final Map<VMInfo, Future<?>> pendingUpdates = new IdentityHashMap<>();
+    private final Map<VMInfo, VMInfo> snapshots = new IdentityHashMap<>();
+    private final Map<VMInfo, Future<?>> releasing = new IdentityHashMap<>();
+    private final List<VMInfo> displayed = new ArrayList<>();
+
+    public VMCollector(int parallelism, long deadlineMillis) {
+        executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new CollectorThreadFactory());
+        deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    /**
+     * Updates all given jvms which are due and waits until they have finished or the deadline is reached.
+     *
+     * @return the jvms to show, in the order of the given list: the jvm itself or, if its update
+     * is still running, its snapshot. The list is reused by the next call.
+     */
+    public List<VMInfo> update(List<VMInfo> vmList) {
+        long deadline = System.nanoTime() + deadlineNanos;
+        long now = System.currentTimeMillis();
+        List<VMInfo> submitted = new ArrayList<>(vmList.size());
+        releaseFinished();
+        displayed.clear();
+        for (VMInfo vmInfo : vmList) {
+            displayed.add(vmInfo);
+            Future<?> pending = pendingUpdates.get(vmInfo);
+            if (pending != null && !pending.isDone()) {
+                // previous update still running, keep showing the last values
+                vmInfo.markStale();
+                continue;
+            }
+            if (!vmInfo.getPollSchedule().isDue(now)) {
+                continue;
+            }
+            snapshots.put(vmInfo, vmInfo.snapshot());
+            pendingUpdates.put(vmInfo, executor.submit(new UpdateTask(vmInfo, now)));
+            submitted.add(vmInfo);
+        }
+        for (VMInfo vmInfo : submitted) {
+            Future<?> future = pendingUpdates.get(vmInfo);
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                pendingUpdates.remove(vmInfo);
+            } catch (TimeoutException e) {
+                logger.log(Level.FINE, "update deadline missed (PID=" + vmInfo.getVMId() + ")");
+                vmInfo.markStale();
+            } catch (ExecutionException e) {
+                logger.log(Level.FINE, "error during update (PID=" + vmInfo.getVMId() + ")", e.getCause());
+                pendingUpdates.remove(vmInfo);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        pendingUpdates.keySet().retainAll(vmList);
+        snapshots.keySet().retainAll(vmList);
+        for (int i = 0; i < displayed.size(); i++) {
+            Future<?> pending = pendingUpdates.get(displayed.get(i));
+            if (pending != null && !pending.isDone()) {
+                displayed.set(i, snapshots.get(displayed.get(i)));
+            }
+        }
+        return displayed;
+    }
+
+    /**
+     * Releases a jvm which is no longer monitored. If its update is still running,
+     * the jvm is released once the update has finished.
+     */
+    public void release(VMInfo vmInfo) {
+        Future<?> pending = pendingUpdates.remove(vmInfo);
+        snapshots.remove(vmInfo);
+        if (pending != null && !pending.isDone()) {
+            releasing.put(vmInfo, pending);
+        } else {
+            vmInfo.release();
+        }
+    }
+
+    private void releaseFinished() {
+        for (Iterator<Map.Entry<VMInfo, Future<?>>> it = releasing.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<VMInfo, Future<?>> entry = it.next();
+            if (entry.getValue().isDone()) {
+                entry.getKey().release();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Stops all worker threads, pending updates are abandoned.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static final class UpdateTask implements Runnable {
+        private final VMInfo vmInfo;
+        private final long scheduled;
+
+        UpdateTask(VMInfo p_vmInfo, long p_scheduled) {
+            vmInfo = p_vmInfo;
+            scheduled = p_scheduled;
+        }
+
+        public void run() {
+            // an update in progress must not lose its connection to one opened by another update
+            vmInfo.setKeepConnectionOpen(true);
+            try {
+                vmInfo.update();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            } finally {
+                PollSchedule pollSchedule = vmInfo.getPollSchedule();
+                pollSchedule.polled(vmInfo, scheduled);
+                vmInfo.setKeepConnectionOpen(pollSchedule.getInterval() == 0);
+            }
+        }
+    }
+
+    private static final class CollectorThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "jvmtop-collector-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
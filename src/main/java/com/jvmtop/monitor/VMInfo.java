@@ -26,16 +26,22 @@ import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
 import java.lang.management.OperatingSystemMXBean;
 import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.rmi.ConnectException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.jvmtop.monitor.RefreshSchedule.Tier;
 import com.jvmtop.openjdk.tools.ConnectionState;
 import com.jvmtop.openjdk.tools.LocalVirtualMachine;
 import com.jvmtop.openjdk.tools.ProxyClient;
@@ -54,6 +60,18 @@ public class VMInfo {
     public static final Comparator<VMInfo> USED_HEAP_COMPARATOR = new UsedHeapComparator();
     public static final Comparator<VMInfo> CPU_LOAD_COMPARATOR  = new CPULoadComparator();
 
+    private static final Pattern JAVA_VERSION_PATTERN = Pattern.compile("[0-9]\\.([0-9])\\.0_([0-9]+)(-.*)?");
+    private static final Pattern BUILD_VERSION_PATTERN = Pattern.compile(".*-(.*)_.*");
+
+    private static final MemoryUsage NO_MEMORY_USAGE = new MemoryUsage(-1, 0, 0, -1);
+
+    private static final long RETRY_MIN_DELAY_MILLIS = 2000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 5 * 60 * 1000;
+
+    private static final int SAMPLE_STALE = 1;
+    private static final int SAMPLE_DEADLOCK = 2;
+    private static final int SAMPLE_MEMORY = 4;
+
     private VMInfoState state = VMInfoState.INIT;
     private ProxyClient proxyClient;
     private Collection<java.lang.management.GarbageCollectorMXBean> gcMXBeans;
@@ -63,8 +81,9 @@ public class VMInfo {
     private MemoryMXBean memoryMXBean;
     private ThreadMXBean threadMXBean;
 
-    private MemoryUsage heapMemoryUsage;
-    private MemoryUsage nonHeapMemoryUsage;
+    // until the first update, which may still run on a collector thread after the attach
+    private MemoryUsage heapMemoryUsage = NO_MEMORY_USAGE;
+    private MemoryUsage nonHeapMemoryUsage = NO_MEMORY_USAGE;
     private int vmId;
 
     private long lastGcTime;
@@ -80,12 +99,43 @@ public class VMInfo {
     private double cpuLoad;
     private double gcLoad;
     private int updateErrorCount = 0;
-    private boolean deadlocksDetected;
+    private final DeadlockDetector deadlockDetector = new DeadlockDetector();
+    private final ThreadStatsTable threadStats = new ThreadStatsTable();
+    private final MetricHistory cpuLoadHistory = new MetricHistory();
+    private final MetricHistory gcLoadHistory = new MetricHistory();
+    private final MetricHistory heapUsedHistory = new MetricHistory();
+    private boolean gcPausesEnabled;
+    private GcPauseMonitor gcPauses;
+    private Object gcPausesConnection;
+    private final ThreadStatsTable allocationStats = new ThreadStatsTable();
+    private final CallStats callStats;
+    private final PollSchedule pollSchedule;
+    private VMInfo snapshot;
+    private boolean allocationSupported;
+    private long lastAllocationTime;
+    private long allocationRate = -1;
+    private boolean allocationSampled;
+    private volatile boolean stale;
 
     private LocalVirtualMachine localVm;
+    private RemoteEndpoint remote;
+    private int remotePid = -1;
     private String vmVersion;
     private String osUser;
     private Map<String, String> systemProperties;
+    private PerfCounters perfCounters;
+    private final RefreshSchedule schedule = new RefreshSchedule();
+    private List<String> inputArguments = Collections.emptyList();
+    private long peakThreadCount;
+    private long totalStartedThreadCount;
+    private boolean threadCpuTimeSupported;
+    private int availableProcessors = 1;
+    private final boolean agentless;
+    private int retryCount;
+    private long nextRetry;
+    private boolean replayed;
+    private boolean replayedDeadlock;
+    private String displayName;
 
     /**
      * Comparator providing ordering of VMInfo objects by the current heap usage of their monitored jvms
@@ -105,81 +155,268 @@ public class VMInfo {
         }
     }
 
-    private VMInfo(int p_vmid, LocalVirtualMachine p_localVm, VMInfoState p_state) {
+    private VMInfo(int p_vmid, LocalVirtualMachine p_localVm, boolean p_agentless) {
         vmId = p_vmid;
         localVm = p_localVm;
-        state = p_state;
+        agentless = p_agentless;
+        callStats = new CallStats();
+        pollSchedule = new PollSchedule();
     }
 
-    private VMInfo(int p_vmid, ProxyClient p_proxyClient, LocalVirtualMachine p_localVm) throws Exception {
-        vmId = p_vmid;
-        proxyClient = p_proxyClient;
-        localVm = p_localVm;
-        state = VMInfoState.ATTACHED;
-        update();
+    /**
+     * Creates the snapshot of the given jvm, which shares its schedule and call statistics.
+     */
+    private VMInfo(VMInfo p_original) {
+        vmId = p_original.vmId;
+        localVm = p_original.localVm;
+        remote = p_original.remote;
+        agentless = p_original.agentless;
+        callStats = p_original.callStats;
+        pollSchedule = p_original.pollSchedule;
+        replayed = true;
     }
 
     public static VMInfo processNewVM(LocalVirtualMachine localvm, int vmid) {
+        VMInfo vmInfo = new VMInfo(vmid, localvm, false);
+        vmInfo.attach();
+        return vmInfo;
+    }
+
+    /**
+     * Creates a new VMInfo for a local jvm which is attached by its first update, like a remote jvm,
+     * so that starting the management agent of a new jvm does not block the caller.
+     */
+    public static VMInfo processNewVMDetached(LocalVirtualMachine localvm, int vmid) {
+        VMInfo vmInfo = new VMInfo(vmid, localvm, false);
+        vmInfo.state = VMInfoState.DETACHED;
+        return vmInfo;
+    }
+
+    /**
+     * Creates a new VMInfo for a jvm which is accessed through the given proxy client,
+     * e.g. a remote jvm or the jvm running jvmtop itself.
+     */
+    public static VMInfo processNewVM(ProxyClient proxyClient, int vmid) {
+        VMInfo vmInfo = new VMInfo(vmid, null, false);
+        vmInfo.proxyClient = proxyClient;
+        proxyClient.setCallListener(vmInfo.callStats);
+        vmInfo.attach();
+        return vmInfo;
+    }
+
+    /**
+     * Creates a new VMInfo for a remote jvm. The connection is opened by its first update,
+     * so creating many of them does not block on slow or unreachable hosts.
+     */
+    public static VMInfo processNewRemoteVM(RemoteEndpoint endpoint, int vmid) {
+        VMInfo vmInfo = new VMInfo(vmid, null, false);
+        vmInfo.remote = endpoint;
+        vmInfo.displayName = endpoint.getAddress();
+        vmInfo.state = VMInfoState.DETACHED;
+        return vmInfo;
+    }
+
+    /**
+     * Creates a new VMInfo which reads the metrics of the given local jvm from its hsperfdata file,
+     * without attaching to it. No cpu load is available on platforms other than Linux
+     * and deadlocks are not detected.
+     */
+    public static VMInfo processNewVMAgentless(LocalVirtualMachine localvm, int vmid) {
+        VMInfo vmInfo = new VMInfo(vmid, localvm, true);
+        vmInfo.attach();
+        return vmInfo;
+    }
+
+    /**
+     * Creates a VMInfo which is not connected to a jvm, its metrics are read from a recording.
+     */
+    static VMInfo createReplayed(int vmid) {
+        VMInfo vmInfo = new VMInfo(vmid, null, false);
+        vmInfo.replayed = true;
+        return vmInfo;
+    }
+
+    /**
+     * Attaches to the jvm (or opens its hsperfdata file) and fetches the first metrics.
+     * If this fails, the next attempt is scheduled with exponential backoff.
+     */
+    private void attach() {
+        schedule.reset();
+        lastUpTime = -1;
+        lastCPUTime = -1;
+        updateErrorCount = 0;
         try {
-            if (localvm == null || !localvm.isAttachable()) {
-                Logger.getLogger("jvmtop").log(Level.FINE, "jvm is not attachable (PID=" + vmid + ")");
-                return VMInfo.createDeadVM(vmid, localvm);
+            if (agentless) {
+                state = openPerfCounters();
+            } else if (localVm == null? proxyClient == null && remote == null : !localVm.isAttachable()) {
+                Logger.getLogger("jvmtop").log(Level.FINE, "jvm is not attachable (PID=" + vmId + ")");
+                state = VMInfoState.ERROR_DURING_ATTACH;
+            } else {
+                state = attachToVM();
+            }
+            if (state == VMInfoState.ATTACHED) {
+                update();
             }
-            return attachToVM(localvm, vmid);
         } catch (Exception e) {
-            Logger.getLogger("jvmtop").log(Level.FINE, "error during attach (PID=" + vmid + ")", e);
-            return VMInfo.createDeadVM(vmid, localvm);
+            Logger.getLogger("jvmtop").log(Level.FINE, "error during attach (PID=" + vmId + ")", e);
+            state = VMInfoState.ERROR_DURING_ATTACH;
+        }
+        if (state == VMInfoState.ATTACHED) {
+            retryCount = 0;
+        } else {
+            scheduleRetry();
         }
     }
 
     /**
-     *
-     * Creates a new VMInfo which is attached to a given LocalVirtualMachine
+     * Reopens a connection which was closed to stay within the max. number of connections.
+     * The jvm is still the same, so unlike attach() the retry delay and the previous values are kept.
      */
-    private static VMInfo attachToVM(LocalVirtualMachine localvm, int vmid) throws Exception {
+    private boolean reconnect() {
+        try {
+            proxyClient.connect();
+            schedule.reset();
+            return true;
+        } catch (Exception e) {
+            Logger.getLogger("jvmtop").log(Level.FINE, "error during reconnect (PID=" + vmId + ")", e);
+            return false;
+        }
+    }
+
+    /**
+     * Schedules the next attach attempt, doubling the delay after every failed attempt.
+     */
+    private void scheduleRetry() {
+        long delay = Math.min(RETRY_MAX_DELAY_MILLIS, RETRY_MIN_DELAY_MILLIS << Math.min(retryCount, 20));
+        retryCount++;
+        nextRetry = System.currentTimeMillis() + delay;
+    }
+
+    /**
+     * Opens the hsperfdata file of the jvm and reads the jvm-constant data from it.
+     */
+    private VMInfoState openPerfCounters() throws Exception {
+        perfCounters = new PerfCounters(vmId);
+        systemProperties = perfCounters.getProperties();
+        vmVersion = extractShortVer(systemProperties.get("java.version"), systemProperties.get("java.vm.vendor"));
+        osUser = systemProperties.get("user.name");
+        availableProcessors = Runtime.getRuntime().availableProcessors();
+        return VMInfoState.ATTACHED;
+    }
+
+    /**
+     * Connects to the jvm, loading the management agent if required.
+     */
+    private VMInfoState attachToVM() throws Exception {
         //VirtualMachine vm = VirtualMachine.attach("" + vmid);
         try {
-            ProxyClient proxyClient = ProxyClient.getProxyClient(localvm);
+            if (localVm != null) {
+                proxyClient = ProxyClient.getProxyClient(localVm);
+            } else if (remote != null) {
+                proxyClient = remote.getProxyClient();
+            }
+            proxyClient.setCallListener(callStats);
             proxyClient.connect();
             if (proxyClient.getConnectionState() == ConnectionState.DISCONNECTED) {
-                Logger.getLogger("jvmtop").log(Level.FINE, "connection refused (PID=" + vmid + ")");
-                return createDeadVM(vmid, localvm);
+                Logger.getLogger("jvmtop").log(Level.FINE, "connection refused (PID=" + vmId + ")");
+                return VMInfoState.ERROR_DURING_ATTACH;
             }
-            return new VMInfo(vmid, proxyClient, localvm);
+            return VMInfoState.ATTACHED;
         } catch (ConnectException rmiE) {
-            if (rmiE.getMessage().contains("refused")) {
-                Logger.getLogger("jvmtop").log(Level.FINE, "connection refused (PID=" + vmid + ")", rmiE);
-                return createDeadVM(vmid, localvm, VMInfoState.CONNECTION_REFUSED);
+            if (remote != null || rmiE.getMessage().contains("refused")) {
+                Logger.getLogger("jvmtop").log(Level.FINE, "connection refused (PID=" + vmId + ")", rmiE);
+                return VMInfoState.CONNECTION_REFUSED;
             }
             rmiE.printStackTrace(System.err);
         } catch (IOException e) {
+            if (remote != null) {
+                // unreachable hosts are expected in a fleet, keep them out of the terminal
+                Logger.getLogger("jvmtop").log(Level.FINE, "could not connect to " + remote, e);
+                return VMInfoState.CONNECTION_REFUSED;
+            }
             if ((e.getCause() != null
                     && e.getCause() instanceof AttachNotSupportedException)
                     || e.getMessage().contains("Permission denied"))
             {
-                Logger.getLogger("jvmtop").log(Level.FINE, "could not attach (PID=" + vmid + ")", e);
-                return createDeadVM(vmid, localvm, VMInfoState.CONNECTION_REFUSED);
+                Logger.getLogger("jvmtop").log(Level.FINE, "could not attach (PID=" + vmId + ")", e);
+                return VMInfoState.CONNECTION_REFUSED;
             }
             e.printStackTrace(System.err);
         } catch (Exception e) {
-            Logger.getLogger("jvmtop").log(Level.WARNING, "could not attach (PID=" + vmid + ")", e);
+            Logger.getLogger("jvmtop").log(Level.WARNING, "could not attach (PID=" + vmId + ")", e);
         }
-        return createDeadVM(vmid, localvm);
+        return VMInfoState.ERROR_DURING_ATTACH;
     }
 
     /**
-     * Creates a dead VMInfo, representing a jvm which cannot be attached or other monitoring issues occurred.
+     * Keeps the jmx connection of the jvm open while it is polled every iteration,
+     * closing it to stay within the max. number of connections would only reopen it on the next update.
      */
-    private static VMInfo createDeadVM(int vmid, LocalVirtualMachine localVm) {
-        return createDeadVM(vmid, localVm, VMInfoState.ERROR_DURING_ATTACH);
+    void setKeepConnectionOpen(boolean p_keepOpen) {
+        if (proxyClient != null) {
+            proxyClient.setKeepOpen(p_keepOpen);
+        }
     }
 
     /**
-     * Creates a dead VMInfo, representing a jvm in a given state
-     * which cannot be attached or other monitoring issues occurred.
+     * Closes the connection or hsperfdata file of this jvm, e.g. after the jvm has terminated.
      */
-    private static VMInfo createDeadVM(int vmid, LocalVirtualMachine localVm, VMInfoState state) {
-        return new VMInfo(vmid, localVm, state);
+    public void release() {
+        if (proxyClient != null) {
+            ProxyClient.release(proxyClient);
+        }
+        if (perfCounters != null) {
+            perfCounters.close();
+        }
+        callStats.release();
+        state = VMInfoState.DETACHED;
+    }
+
+    /**
+     * Copies the current metrics into a second VMInfo, which is reused by the next calls.
+     * While an update is still running on a collector thread, the views show the snapshot
+     * taken before it started instead of the fields it is writing.
+     * Must not be called while an update of this jvm is running.
+     */
+    VMInfo snapshot() {
+        if (snapshot == null) {
+            snapshot = new VMInfo(this);
+        }
+        VMInfo copy = snapshot;
+        copy.state = state;
+        copy.nextRetry = nextRetry;
+        copy.stale = stale;
+        copy.replayedDeadlock = hasDeadlockThreads();
+        copy.displayName = getDisplayName();
+        copy.remotePid = remotePid;
+        copy.heapMemoryUsage = heapMemoryUsage;
+        copy.nonHeapMemoryUsage = nonHeapMemoryUsage;
+        copy.lastGcTime = lastGcTime;
+        copy.lastUpTime = lastUpTime;
+        copy.lastCPUTime = lastCPUTime;
+        copy.gcCount = gcCount;
+        copy.deltaUptime = deltaUptime;
+        copy.deltaCpuTime = deltaCpuTime;
+        copy.deltaGcTime = deltaGcTime;
+        copy.totalLoadedClassCount = totalLoadedClassCount;
+        copy.threadCount = threadCount;
+        copy.peakThreadCount = peakThreadCount;
+        copy.totalStartedThreadCount = totalStartedThreadCount;
+        copy.cpuLoad = cpuLoad;
+        copy.gcLoad = gcLoad;
+        copy.allocationRate = allocationRate;
+        copy.allocationSupported = allocationSupported;
+        copy.vmVersion = vmVersion;
+        copy.osUser = osUser;
+        copy.systemProperties = systemProperties;
+        copy.inputArguments = inputArguments;
+        copy.threadCpuTimeSupported = threadCpuTimeSupported;
+        copy.availableProcessors = availableProcessors;
+        copy.gcPauses = gcPauses;
+        copy.cpuLoadHistory.copyFrom(cpuLoadHistory);
+        copy.gcLoadHistory.copyFrom(gcLoadHistory);
+        copy.heapUsedHistory.copyFrom(heapUsedHistory);
+        return copy;
     }
 
     /**
@@ -191,51 +428,225 @@ public class VMInfo {
     }
 
     /**
-     * Updates all jvm metrics to the most recent remote values
+     * @return the time of the next attach attempt while the jvm is not attached, 0 if it is attempted by the next update
+     */
+    public long getNextRetry() { return nextRetry; }
+
+    /**
+     * Updates all jvm metrics to the most recent remote values.
+     * If the jvm is not attached, a new attach is attempted once the backoff delay elapsed.
      */
     public void update() throws Exception {
+        if (replayed) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            updateOrAttach();
+        } finally {
+            callStats.recordUpdate(System.nanoTime() - start);
+        }
+    }
+
+    private void updateOrAttach() throws Exception {
         switch(state) {
             case ERROR_DURING_ATTACH:
             case DETACHED:
             case CONNECTION_REFUSED:
+                if (System.currentTimeMillis() >= nextRetry) {
+                    attach();
+                }
                 return;
         }
-        if (proxyClient.isDead()) {
+        if (perfCounters != null) {
+            updateFromPerfCounters();
+            return;
+        }
+        if (proxyClient.isDead() && !(proxyClient.isEvicted() && reconnect())) {
             state = VMInfoState.DETACHED;
+            scheduleRetry();
             return;
         }
         try {
             proxyClient.flush();
+            long now = System.currentTimeMillis();
 
-            osBean = proxyClient.getSunOperatingSystemMXBean();
-            runtimeMXBean = proxyClient.getRuntimeMXBean();
-            gcMXBeans = proxyClient.getGarbageCollectorMXBeans();
-            classLoadingMXBean = proxyClient.getClassLoadingMXBean();
-            memoryMXBean = proxyClient.getMemoryMXBean();
-            heapMemoryUsage = memoryMXBean.getHeapMemoryUsage();
-            nonHeapMemoryUsage = memoryMXBean.getNonHeapMemoryUsage();
-            threadMXBean = proxyClient.getThreadMXBean();
-
-            //TODO: fetch jvm-constant data only once
-            systemProperties = runtimeMXBean.getSystemProperties();
-            vmVersion = extractShortVer();
-            osUser = systemProperties.get("user.name");
-            updateInternal();
-
-            deadlocksDetected = threadMXBean.findDeadlockedThreads() != null
-                    || threadMXBean.findMonitorDeadlockedThreads() != null;
+            if (schedule.isDue(Tier.CONSTANT, now)) {
+                updateConstants();
+                schedule.refreshed(Tier.CONSTANT, now);
+            }
+            if (gcPausesEnabled && gcPausesConnection != proxyClient.getMBeanServerConnection()) {
+                subscribeGcPauses();
+            }
+            if (schedule.isDue(Tier.FAST, now)) {
+                heapMemoryUsage = memoryMXBean.getHeapMemoryUsage();
+                nonHeapMemoryUsage = memoryMXBean.getNonHeapMemoryUsage();
+                updateInternal();
+                schedule.refreshed(Tier.FAST, now);
+            }
+            if (schedule.isDue(Tier.SLOW, now)) {
+                updateSlowMetrics();
+                schedule.refreshed(Tier.SLOW, now);
+            }
+            if (deadlockDetector.isDue(now)) {
+                deadlockDetector.check(proxyClient, threadMXBean, now);
+            }
+            stale = false;
+            // e.g. a remote call which timed out while the jvm did not respond
+            state = VMInfoState.ATTACHED;
+            updateErrorCount = 0;
 
         } catch (Throwable e) {
             Logger.getLogger("jvmtop").log(Level.FINE, "error during update", e);
             updateErrorCount++;
             if (updateErrorCount > 10) {
                 state = VMInfoState.DETACHED;
+                scheduleRetry();
             } else {
                 state = VMInfoState.ATTACHED_UPDATE_ERROR;
             }
         }
     }
 
+    /**
+     * Fetches the MXBean proxies and all jvm-constant data, needed only once per connection
+     */
+    private void updateConstants() throws Exception {
+        osBean = proxyClient.getSunOperatingSystemMXBean();
+        runtimeMXBean = proxyClient.getRuntimeMXBean();
+        gcMXBeans = proxyClient.getGarbageCollectorMXBeans();
+        classLoadingMXBean = proxyClient.getClassLoadingMXBean();
+        memoryMXBean = proxyClient.getMemoryMXBean();
+        threadMXBean = proxyClient.getThreadMXBean();
+
+        systemProperties = runtimeMXBean.getSystemProperties();
+        inputArguments = runtimeMXBean.getInputArguments();
+        if (remote != null) {
+            remotePid = parsePid(runtimeMXBean.getName());
+        }
+        vmVersion = extractShortVer(systemProperties.get("java.runtime.version"), systemProperties.get("java.vendor"));
+        osUser = systemProperties.get("user.name");
+        availableProcessors = osBean.getAvailableProcessors();
+        threadCpuTimeSupported = threadMXBean.isThreadCpuTimeSupported();
+        com.sun.management.ThreadMXBean sunThreadMXBean = proxyClient.getSunThreadMXBean();
+        allocationSupported = sunThreadMXBean != null && sunThreadMXBean.isThreadAllocatedMemorySupported();
+    }
+
+    /**
+     * Tracks the GC pauses from the next update on. Over a remote connection every subscription
+     * keeps a thread fetching the notifications, so only views showing the pauses enable it.
+     */
+    public void enableGcPauses() {
+        gcPausesEnabled = true;
+    }
+
+    /**
+     * Subscribes to the GC notifications once per connection, the pauses are kept across reconnects.
+     */
+    private void subscribeGcPauses() {
+        gcPausesConnection = proxyClient.getMBeanServerConnection();
+        try {
+            GcPauseMonitor monitor = gcPauses != null? gcPauses : new GcPauseMonitor();
+            if (proxyClient.addGarbageCollectionListener(monitor) > 0) {
+                gcPauses = monitor;
+            }
+        } catch (Exception e) {
+            // jvms before 7u4 do not send GC notifications
+            Logger.getLogger("jvmtop").log(Level.FINE, "could not subscribe to GC notifications (PID=" + vmId + ")", e);
+        }
+    }
+
+    /**
+     * @return the pid of the runtime name "pid@hostname", -1 if it has a different format
+     */
+    private static int parsePid(String runtimeName) {
+        int at = runtimeName != null? runtimeName.indexOf('@') : -1;
+        try {
+            return at > 0? Integer.parseInt(runtimeName.substring(0, at)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Fetches the slowly changing metrics
+     */
+    private void updateSlowMetrics() throws Exception {
+        totalLoadedClassCount = classLoadingMXBean.getTotalLoadedClassCount();
+        peakThreadCount = threadMXBean.getPeakThreadCount();
+        totalStartedThreadCount = threadMXBean.getTotalStartedThreadCount();
+        if (allocationSupported && !allocationSampled) {
+            updateAllocationRate();
+        }
+    }
+
+    /**
+     * Sets the allocation rate derived from a ThreadSampler, which fetches the allocated bytes
+     * of all threads anyway. The jvm does not fetch them for the allocation rate from then on.
+     */
+    void setSampledAllocationRate(long rate) {
+        allocationSampled = true;
+        allocationRate = rate;
+    }
+
+    /**
+     * Reports the number of BLOCKED threads seen while sampling threads of this jvm,
+     * rising numbers trigger an early deadlock check.
+     */
+    public void reportBlockedThreads(int count) {
+        deadlockDetector.reportBlockedThreads(count);
+    }
+
+    /**
+     * Marks the metrics as outdated, e.g. because the last update did not finish in time.
+     * The flag is reset by the next successful update.
+     */
+    public void markStale() {
+        stale = true;
+        if (snapshot != null) {
+            snapshot.stale = true;
+        }
+    }
+
+    /**
+     * @return true if the metrics were not refreshed by the most recent update cycle
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Updates all metrics from the hsperfdata counters of the jvm
+     */
+    private void updateFromPerfCounters() {
+        if (!perfCounters.isAlive()) {
+            perfCounters.close();
+            perfCounters = null;
+            state = VMInfoState.DETACHED;
+            scheduleRetry();
+            return;
+        }
+        heapMemoryUsage = newMemoryUsage(perfCounters.getHeapUsed(),
+                perfCounters.getHeapCommitted(), perfCounters.getHeapMax());
+        nonHeapMemoryUsage = newMemoryUsage(perfCounters.getNonHeapUsed(),
+                perfCounters.getNonHeapCommitted(), perfCounters.getNonHeapMax());
+        gcCount = perfCounters.getGcCount();
+        updateDeltas(perfCounters.getUptime(), perfCounters.getProcessCpuTime(), perfCounters.getGcTime());
+        totalLoadedClassCount = perfCounters.getTotalLoadedClassCount();
+        threadCount = perfCounters.getThreadCount();
+        stale = false;
+    }
+
+    /**
+     * Creates a MemoryUsage from counters which are read one by one while the jvm updates them,
+     * clamping the values so that used <= committed <= max holds.
+     */
+    private static MemoryUsage newMemoryUsage(long used, long committed, long max) {
+        used = Math.max(0, used);
+        committed = Math.max(used, committed);
+        return new MemoryUsage(-1, used, committed, max < 0? -1 : Math.max(committed, max));
+    }
+
     /**
      * calculates internal delta metrics
      */
@@ -243,20 +654,53 @@ public class VMInfo {
         long uptime = runtimeMXBean.getUptime();
         long cpuTime = proxyClient.getProcessCpuTime();
         //long cpuTime = osBean.getProcessCpuTime();
-        long gcTime = sumGCTimes();
         gcCount = sumGCCount();
-        if (lastUpTime > 0 && lastCPUTime > 0 && gcTime > 0) {
+        updateDeltas(uptime, cpuTime, sumGCTimes());
+        threadCount = threadMXBean.getThreadCount();
+    }
+
+    /**
+     * Calculates the allocation rate of the jvm from the bytes allocated by each thread since the previous slow update,
+     * using one remote call for the thread ids and one for the allocated bytes of all threads.
+     * Allocations of threads which died between two updates are not counted.
+     */
+    private void updateAllocationRate() throws Exception {
+        long[] ids = threadMXBean.getAllThreadIds();
+        long[] bytes = proxyClient.getSunThreadMXBean().getThreadAllocatedBytes(ids);
+        long now = System.currentTimeMillis();
+        long allocated = 0;
+        allocationStats.beginSample();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] < 0) {
+                // thread died or allocation measurement is disabled
+                continue;
+            }
+            int slot = allocationStats.recordAllocatedBytes(ids[i], bytes[i], now);
+            allocated += Math.max(0, allocationStats.getDeltaAllocatedBytes(slot));
+        }
+        allocationStats.endSample();
+        allocationRate = lastAllocationTime > 0 && now > lastAllocationTime?
+                allocated * 1000 / (now - lastAllocationTime) : -1;
+        lastAllocationTime = now;
+    }
+
+    /**
+     * calculates the cpu and gc load since the previous update
+     */
+    private void updateDeltas(long uptime, long cpuTime, long gcTime) {
+        if (lastUpTime > 0 && lastCPUTime > 0 && gcTime >= 0) {
             deltaUptime = uptime - lastUpTime;
             deltaCpuTime = (cpuTime - lastCPUTime) / 1000000;
             deltaGcTime = gcTime - lastGcTime;
             gcLoad = calcLoad(deltaCpuTime, deltaGcTime);
             cpuLoad = calcLoad(deltaUptime, deltaCpuTime);
+            cpuLoadHistory.add(cpuLoad);
+            gcLoadHistory.add(gcLoad);
+            heapUsedHistory.add(getHeapUsed());
         }
         lastUpTime = uptime;
         lastCPUTime = cpuTime;
         lastGcTime = gcTime;
-        totalLoadedClassCount = classLoadingMXBean.getTotalLoadedClassCount();
-        threadCount = threadMXBean.getThreadCount();
     }
 
     /**
@@ -266,7 +710,7 @@ public class VMInfo {
         if (deltaTime <= 0 || deltaUptime == 0) {
             return 0.0;
         }
-        return Math.min(99.0, deltaTime / (deltaUptime * osBean.getAvailableProcessors()));
+        return Math.min(99.0, deltaTime / (deltaUptime * availableProcessors));
     }
 
     /**
@@ -298,18 +742,92 @@ public class VMInfo {
     public long getNonHeapMax() { return nonHeapMemoryUsage.getMax(); }
 
     public long getTotalLoadedClassCount() { return totalLoadedClassCount; }
-    public boolean hasDeadlockThreads() { return deadlocksDetected; }
+    public boolean hasDeadlockThreads() { return replayed? replayedDeadlock : deadlockDetector.hasDeadlocks(); }
+    public List<List<ThreadInfo>> getDeadlockCycles() { return deadlockDetector.getCycles(); }
+
+    /**
+     * @return per-thread statistics, maintained by the ThreadSampler of this jvm
+     */
+    public ThreadStatsTable getThreadStats() { return threadStats; }
+
+    /**
+     * @return bytes allocated per second by all threads since the previous update, -1 if not available
+     */
+    public long getAllocationRate() { return allocationRate; }
+
+    /**
+     * @return whether the allocated bytes of threads can be fetched in bulk
+     */
+    public boolean isAllocationSupported() { return allocationSupported; }
+
+    /**
+     * @return the cost of monitoring this jvm: remote calls, attach, connect and update times
+     */
+    public CallStats getCallStats() { return callStats; }
+
+    /**
+     * @return when the overview polls this jvm next
+     */
+    public PollSchedule getPollSchedule() { return pollSchedule; }
+
+    /**
+     * @return the cpu loads of the last samples, empty if the history is disabled
+     */
+    public MetricHistory getCpuLoadHistory() { return cpuLoadHistory; }
+
+    public MetricHistory getGcLoadHistory() { return gcLoadHistory; }
+
+    /**
+     * @return the used heap bytes of the last samples, -1 if not available
+     */
+    public MetricHistory getHeapUsedHistory() { return heapUsedHistory; }
     public long getThreadCount() { return threadCount; }
+    public long getPeakThreadCount() { return peakThreadCount; }
+    public long getTotalStartedThreadCount() { return totalStartedThreadCount; }
+    public long getUptime() { return lastUpTime; }
+    public boolean isThreadCpuTimeSupported() { return threadCpuTimeSupported; }
+    public List<String> getInputArguments() { return inputArguments; }
     public double getCpuLoad() { return cpuLoad; }
     public double getGcLoad() { return gcLoad; }
     public ProxyClient getProxyClient() { return proxyClient; }
-    public String getDisplayName() { return localVm.displayName(); }
-    public Integer getId() { return localVm.vmid(); }
+    public String getDisplayName() {
+        if (localVm != null) {
+            return localVm.displayName();
+        }
+        return proxyClient != null && remote == null? proxyClient.getDisplayName() : displayName;
+    }
+
+    /**
+     * @return the main class and arguments of the jvm, for remote jvms (whose display name is their endpoint)
+     * read from its system properties once connected, otherwise null
+     */
+    public String getCommandLine() {
+        if (remote == null) {
+            return getDisplayName();
+        }
+        return systemProperties != null? systemProperties.get("sun.java.command") : null;
+    }
+
+    /**
+     * @return the pid of the jvm, for remote jvms the pid on their host once connected
+     */
+    public Integer getId() {
+        if (localVm != null) {
+            return localVm.vmid();
+        }
+        return remotePid >= 0? remotePid : vmId;
+    }
+
+    /**
+     * @return the endpoint of a remote jvm, null for local jvms
+     */
+    public RemoteEndpoint getRemoteEndpoint() { return remote; }
     public int getVMId() { return vmId; }
     public long getGcCount() { return gcCount; }
     public String getVMVersion() { return vmVersion; }
     public String getOSUser() { return osUser; }
     public long getGcTime() { return lastGcTime; }
+    public long getProcessCpuTime() { return lastCPUTime; }
     public long getDeltaUptime() { return deltaUptime; }
     public long getDeltaCpuTime() { return deltaCpuTime; }
     public long getDeltaGcTime() { return deltaGcTime; }
@@ -317,23 +835,138 @@ public class VMInfo {
 
     public RuntimeMXBean getRuntimeMXBean() { return runtimeMXBean; }
     public Collection<java.lang.management.GarbageCollectorMXBean> getGcMXBeans() { return gcMXBeans; }
+
+    /**
+     * @return the GC pauses reported by the jvm since attaching, null if it does not send GC notifications
+     */
+    public GcPauseMonitor getGcPauses() { return gcPauses; }
     public MemoryMXBean getMemoryMXBean()  { return memoryMXBean; }
     public ThreadMXBean getThreadMXBean() { return threadMXBean; }
     public OperatingSystemMXBean getOSBean() { return osBean; }
 
+    /**
+     * Writes the jvm-constant data to a recording.
+     */
+    void writeConstants(Recorder recorder) throws IOException {
+        recorder.putString(getDisplayName());
+        recorder.putString(vmVersion);
+        recorder.putString(osUser);
+        recorder.putByte((byte) (threadCpuTimeSupported? 1 : 0));
+        recorder.putInt(availableProcessors);
+        if (systemProperties == null) {
+            recorder.putInt(-1);
+        } else {
+            recorder.putInt(systemProperties.size());
+            for (Map.Entry<String, String> property : systemProperties.entrySet()) {
+                recorder.putString(property.getKey());
+                recorder.putString(property.getValue());
+            }
+        }
+        recorder.putInt(inputArguments.size());
+        for (String argument : inputArguments) {
+            recorder.putString(argument);
+        }
+    }
+
+    void readConstants(Replayer replayer) throws IOException {
+        displayName = replayer.getString();
+        vmVersion = replayer.getString();
+        osUser = replayer.getString();
+        threadCpuTimeSupported = replayer.getByte() != 0;
+        availableProcessors = replayer.getInt();
+        int count = replayer.getInt();
+        if (count < 0) {
+            systemProperties = null;
+        } else {
+            systemProperties = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                systemProperties.put(replayer.getString(), replayer.getString());
+            }
+        }
+        count = replayer.getInt();
+        inputArguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            inputArguments.add(replayer.getString());
+        }
+    }
+
+    /**
+     * Writes the current metrics to a recording.
+     */
+    void writeSample(Recorder recorder) throws IOException {
+        boolean memory = heapMemoryUsage != null && nonHeapMemoryUsage != null;
+        recorder.putByte((byte) state.ordinal());
+        recorder.putByte((byte) ((stale? SAMPLE_STALE : 0)
+                | (hasDeadlockThreads()? SAMPLE_DEADLOCK : 0)
+                | (memory? SAMPLE_MEMORY : 0)));
+        if (memory) {
+            recorder.putLong(heapMemoryUsage.getUsed());
+            recorder.putLong(heapMemoryUsage.getCommitted());
+            recorder.putLong(heapMemoryUsage.getMax());
+            recorder.putLong(nonHeapMemoryUsage.getUsed());
+            recorder.putLong(nonHeapMemoryUsage.getCommitted());
+            recorder.putLong(nonHeapMemoryUsage.getMax());
+        }
+        recorder.putDouble(cpuLoad);
+        recorder.putDouble(gcLoad);
+        recorder.putLong(lastUpTime);
+        recorder.putLong(lastCPUTime);
+        recorder.putLong(lastGcTime);
+        recorder.putLong(deltaUptime);
+        recorder.putLong(deltaCpuTime);
+        recorder.putLong(deltaGcTime);
+        recorder.putLong(gcCount);
+        recorder.putLong(totalLoadedClassCount);
+        recorder.putLong(threadCount);
+        recorder.putLong(peakThreadCount);
+        recorder.putLong(totalStartedThreadCount);
+        recorder.putLong(allocationRate);
+    }
+
+    void readSample(Replayer replayer) throws IOException {
+        state = VMInfoState.values()[replayer.getByte()];
+        int flags = replayer.getByte();
+        stale = (flags & SAMPLE_STALE) != 0;
+        replayedDeadlock = (flags & SAMPLE_DEADLOCK) != 0;
+        if ((flags & SAMPLE_MEMORY) != 0) {
+            heapMemoryUsage = new MemoryUsage(-1, replayer.getLong(), replayer.getLong(), replayer.getLong());
+            nonHeapMemoryUsage = new MemoryUsage(-1, replayer.getLong(), replayer.getLong(), replayer.getLong());
+        }
+        cpuLoad = replayer.getDouble();
+        gcLoad = replayer.getDouble();
+        long uptime = replayer.getLong();
+        boolean sampled = uptime != lastUpTime;
+        lastUpTime = uptime;
+        lastCPUTime = replayer.getLong();
+        lastGcTime = replayer.getLong();
+        deltaUptime = replayer.getLong();
+        deltaCpuTime = replayer.getLong();
+        deltaGcTime = replayer.getLong();
+        gcCount = replayer.getLong();
+        totalLoadedClassCount = replayer.getLong();
+        threadCount = replayer.getLong();
+        peakThreadCount = replayer.getLong();
+        totalStartedThreadCount = replayer.getLong();
+        allocationRate = replayer.getLong();
+        if (sampled && deltaUptime > 0 && heapMemoryUsage != null) {
+            cpuLoadHistory.add(cpuLoad);
+            gcLoadHistory.add(gcLoad);
+            heapUsedHistory.add(getHeapUsed());
+        }
+    }
+
     /**
      * Extracts the jvmtop "short version" out of different properties
      */
-    private String extractShortVer() {
-        String vmVer = systemProperties.get("java.runtime.version");
-        String vmVendor = systemProperties.get("java.vendor");
-        Pattern pattern = Pattern.compile("[0-9]\\.([0-9])\\.0_([0-9]+)-.*");
-        Matcher matcher = pattern.matcher(vmVer);
+    private static String extractShortVer(String vmVer, String vmVendor) {
+        if (vmVer == null || vmVendor == null || vmVendor.isEmpty()) {
+            return vmVer;
+        }
+        Matcher matcher = JAVA_VERSION_PATTERN.matcher(vmVer);
         if (matcher.matches()) {
             return vmVendor.charAt(0) + matcher.group(1) + "U" + matcher.group(2);
         } else {
-            pattern = Pattern.compile(".*-(.*)_.*");
-            matcher = pattern.matcher(vmVer);
+            matcher = BUILD_VERSION_PATTERN.matcher(vmVer);
             if (matcher.matches()) {
                 return vmVendor.charAt(0) + matcher.group(1).substring(2, 6);
             }
@@ -0,0 +1,112 @@
+package com.jvmtop.monitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.jvmtop.openjdk.tools.LocalVirtualMachine;
+import com.jvmtop.openjdk.tools.ProxyClient;
+
+/**
+ * Discovers the local jvms and keeps their metrics up to date, as shown by the overview.
+ *
+ * To reduce cpu effort, the jvms are rescanned only if the hsperfdata watcher reported a change
+ * or the rescan interval elapsed. Terminated jvms are dropped and their connections closed.
+ * New jvms are attached by their first update on the collector, so a slow attach does not delay the view.
+ * Remote jvms are added once and kept, they reconnect with backoff when their connection fails.
+ */
+public class VMScanner {
+    private final List<VMInfo> vmInfoList = new ArrayList<>();
+    private Map<Integer, LocalVirtualMachine> vmMap = new HashMap<>();
+    private final VMCollector collector;
+    private final HsperfdataWatcher watcher;
+    private final boolean agentless;
+    private final long rescanIntervalMillis;
+    private long lastFullScan;
+    private int remoteCount;
+
+    /**
+     * @param parallelism max. number of jvms updated concurrently
+     * @param updateTimeoutMillis time to wait for a jvm update before its last values are shown as stale
+     * @param p_agentless read the metrics from hsperfdata files instead of attaching
+     * @param p_rescanIntervalMillis time between full scans, in addition to hsperfdata change events
+     */
+    public VMScanner(int parallelism, long updateTimeoutMillis, boolean p_agentless, long p_rescanIntervalMillis) {
+        collector = new VMCollector(parallelism, updateTimeoutMillis);
+        watcher = HsperfdataWatcher.start();
+        agentless = p_agentless;
+        rescanIntervalMillis = p_rescanIntervalMillis;
+    }
+
+    /**
+     * Scans for new jvms if required and updates the metrics of all jvms.
+     *
+     * @return the monitored jvms, jvms whose update is still running are represented by a snapshot
+     * of their last values. The list is updated in place by the next call.
+     */
+    public List<VMInfo> update() {
+        long now = System.currentTimeMillis();
+        if (watcher == null || watcher.pollChanges() || now - lastFullScan >= rescanIntervalMillis) {
+            scanForNewVMs();
+            lastFullScan = now;
+        }
+        return collector.update(vmInfoList);
+    }
+
+    /**
+     * Adds remote jvms, which are connected and updated concurrently with the local ones.
+     * They get negative ids, which do not collide with local pids.
+     *
+     * @throws IllegalArgumentException if the max. number of connections is too small to keep them open
+     */
+    public void addRemoteVMs(List<RemoteEndpoint> endpoints) {
+        ProxyClient.reserveConnections(remoteCount + endpoints.size());
+        for (RemoteEndpoint endpoint : endpoints) {
+            vmInfoList.add(VMInfo.processNewRemoteVM(endpoint, -(++remoteCount)));
+        }
+    }
+
+    private void scanForNewVMs() {
+        Map<Integer, LocalVirtualMachine> machines = agentless?
+                LocalVirtualMachine.getNewMonitoredVirtualMachines(vmMap) : LocalVirtualMachine.getNewVirtualMachines(vmMap);
+
+        for (LocalVirtualMachine localvm : machines.values()) {
+            int vmid = localvm.vmid();
+            if (!vmMap.containsKey(vmid)) {
+                // opening the hsperfdata file does not block, unlike starting the management agent
+                VMInfo vmInfo = agentless?
+                        VMInfo.processNewVMAgentless(localvm, vmid) : VMInfo.processNewVMDetached(localvm, vmid);
+                vmInfoList.add(vmInfo);
+            }
+        }
+        // drop terminated jvms and close their connections once no update is running
+        for (Iterator<VMInfo> it = vmInfoList.iterator(); it.hasNext(); ) {
+            VMInfo vmInfo = it.next();
+            if (vmInfo.getRemoteEndpoint() == null && !machines.containsKey(vmInfo.getVMId())) {
+                collector.release(vmInfo);
+                it.remove();
+            }
+        }
+        vmMap = machines;
+    }
+
+    /**
+     * Waits for the given time, returning early if the hsperfdata watcher reports a change.
+     */
+    public void await(long millis) throws InterruptedException {
+        if (watcher != null) {
+            watcher.await(millis);
+        } else {
+            Thread.sleep(millis);
+        }
+    }
+
+    public void close() {
+        collector.shutdown();
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.jvmtop.openjdk.tools;
+
+/**
+ * Receives the timings of a ProxyClient: its remote calls, starting the management agent and connecting.
+ * Called from the threads which use the connection.
+ */
+public interface CallListener {
+    /**
+     * Ignores all timings, used until a listener is set.
+     */
+    CallListener NONE = new CallListener() {
+        public void recordRpc(long nanos, boolean failed) { }
+        public void recordAttach(long millis) { }
+        public void recordConnect(long millis) { }
+    };
+
+    /**
+     * Records a remote call which took the given time.
+     */
+    void recordRpc(long nanos, boolean failed);
+
+    /**
+     * Records the time it took to start the management agent of the jvm.
+     */
+    void recordAttach(long millis);
+
+    /**
+     * Records the time it took to open the connection to the jvm.
+     */
+    void recordConnect(long millis);
+}
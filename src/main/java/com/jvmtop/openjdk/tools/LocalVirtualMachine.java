@@ -33,6 +33,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -129,23 +130,41 @@ public class LocalVirtualMachine
     // running on the machine
     public static Map<Integer, LocalVirtualMachine> getAllVirtualMachines() {
         Map<Integer, LocalVirtualMachine> map = new HashMap<>();
-        getMonitoredVMs(map, Collections.emptyMap());
-        getAttachableVMs(map, Collections.emptyMap());
+        Set<Integer> active = new HashSet<>();
+        getMonitoredVMs(map, Collections.emptyMap(), active);
+        getAttachableVMs(map, Collections.emptyMap(), active);
         return map;
     }
 
     // This method returns the list of all virtual machines currently
-    // running on the machine but not contained in existingVmMap
+    // running on the machine, reusing the entries of existingVmMap
+    // and dropping those which are not running anymore
     public static Map<Integer, LocalVirtualMachine> getNewVirtualMachines(
             Map<Integer, LocalVirtualMachine> existingVmMap) {
         Map<Integer, LocalVirtualMachine> map = new HashMap<>(existingVmMap);
-        getMonitoredVMs(map, existingVmMap);
-        getAttachableVMs(map, existingVmMap);
+        Set<Integer> active = new HashSet<>();
+        getMonitoredVMs(map, existingVmMap, active);
+        getAttachableVMs(map, existingVmMap, active);
+        map.keySet().retainAll(active);
+        return map;
+    }
+
+    // This method returns the list of all virtual machines currently
+    // running on the machine, reusing the entries of existingVmMap
+    // and dropping those which are not running anymore,
+    // using only the hsperfdata of the jvms (no attach)
+    public static Map<Integer, LocalVirtualMachine> getNewMonitoredVirtualMachines(
+            Map<Integer, LocalVirtualMachine> existingVmMap) {
+        Map<Integer, LocalVirtualMachine> map = new HashMap<>(existingVmMap);
+        Set<Integer> active = new HashSet<>();
+        getMonitoredVMs(map, existingVmMap, active);
+        map.keySet().retainAll(active);
         return map;
     }
 
     private static void getMonitoredVMs(Map<Integer, LocalVirtualMachine> map,
-                                        Map<Integer, LocalVirtualMachine> existingMap) {
+                                        Map<Integer, LocalVirtualMachine> existingMap,
+                                        Set<Integer> active) {
         //Unsupported on J9
         if (J9Mode) return;
         MonitoredHost host;
@@ -156,6 +175,7 @@ public class LocalVirtualMachine
         } catch (java.net.URISyntaxException | MonitorException sx) {
             throw new InternalError(sx.getMessage());
         }
+        active.addAll(vms);
         for (Integer vmid : vms) {
             if (existingMap.containsKey(vmid)) {
                 continue;
@@ -185,11 +205,13 @@ public class LocalVirtualMachine
     private static final String LOCAL_CONNECTOR_ADDRESS_PROP = "com.sun.management.jmxremote.localConnectorAddress";
 
     private static void getAttachableVMs(Map<Integer, LocalVirtualMachine> map,
-                                         Map<Integer, LocalVirtualMachine> existingVmMap) {
+                                         Map<Integer, LocalVirtualMachine> existingVmMap,
+                                         Set<Integer> active) {
         List<VirtualMachineDescriptor> vms = VirtualMachine.list();
         for (VirtualMachineDescriptor vmd : vms) {
             try {
                 Integer vmid = Integer.valueOf(vmd.id());
+                active.add(vmid);
                 if (!map.containsKey(vmid) && !existingVmMap.containsKey(vmid)) {
                     boolean attachable = false;
                     String address = null;
@@ -0,0 +1,110 @@
+package com.jvmtop.openjdk.tools;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+import com.sun.management.GcInfo;
+
+/**
+ * Reads the statistics of a memory pool of a jvm.
+ *
+ * All attributes of the pool are fetched in one getAttributes call, and the last GC info
+ * of the collectors managing the pool in one call per collector. The calls go through
+ * the snapshot connection of the ProxyClient, so collectors shared by several pools
+ * are only queried once until the connection is flushed.
+ */
+public class MemoryPoolProxy {
+    private static final String[] POOL_ATTRIBUTES = {
+        "Usage", "CollectionUsage", "UsageThreshold", "CollectionUsageThreshold"
+    };
+    private static final String[] GC_ATTRIBUTES = { "LastGcInfo" };
+
+    private final ProxyClient client;
+    private final ObjectName objName;
+    private final String poolName;
+    private final boolean heap;
+    private final ObjectName[] collectors;
+
+    MemoryPoolProxy(ProxyClient p_client, ObjectName p_objName, String p_poolName, boolean p_heap,
+                    List<ObjectName> p_collectors) {
+        client = p_client;
+        objName = p_objName;
+        poolName = p_poolName;
+        heap = p_heap;
+        collectors = p_collectors.toArray(new ObjectName[p_collectors.size()]);
+    }
+
+    public String getPoolName() { return poolName; }
+
+    /**
+     * @return true for heap pools, false for non-heap pools (e.g. Metaspace, CodeCache)
+     */
+    public boolean isHeap() { return heap; }
+
+    /**
+     * @return whether the pool is collected by a garbage collector
+     */
+    public boolean isCollected() { return collectors.length > 0; }
+
+    public MemoryPoolStat getStat() throws IOException {
+        AttributeList attributes = client.getAttributes(objName, POOL_ATTRIBUTES);
+        MemoryUsage usage = null;
+        MemoryUsage collectionUsage = null;
+        long usageThreshold = -1;
+        long collectionThreshold = -1;
+        if (attributes != null) {
+            // unsupported attributes (e.g. thresholds) are omitted from the list
+            for (Object value : attributes) {
+                Attribute attribute = (Attribute) value;
+                switch (attribute.getName()) {
+                    case "Usage":
+                        usage = toMemoryUsage(attribute.getValue());
+                        break;
+                    case "CollectionUsage":
+                        collectionUsage = toMemoryUsage(attribute.getValue());
+                        break;
+                    case "UsageThreshold":
+                        usageThreshold = (Long) attribute.getValue();
+                        break;
+                    case "CollectionUsageThreshold":
+                        collectionThreshold = (Long) attribute.getValue();
+                        break;
+                }
+            }
+        }
+
+        // the most recent GC of the collectors managing this pool
+        GcInfo lastGcInfo = null;
+        for (ObjectName collector : collectors) {
+            AttributeList gcAttributes = client.getAttributes(collector, GC_ATTRIBUTES);
+            if (gcAttributes == null || gcAttributes.isEmpty()) {
+                continue;
+            }
+            Object value = ((Attribute) gcAttributes.get(0)).getValue();
+            if (value instanceof CompositeData) {
+                GcInfo gcInfo = GcInfo.from((CompositeData) value);
+                if (lastGcInfo == null || gcInfo.getEndTime() > lastGcInfo.getEndTime()) {
+                    lastGcInfo = gcInfo;
+                }
+            }
+        }
+
+        if (lastGcInfo == null) {
+            return new MemoryPoolStat(poolName, usageThreshold, usage, 0, 0, 0, collectionThreshold,
+                    null, collectionUsage);
+        }
+        MemoryUsage beforeGcUsage = lastGcInfo.getMemoryUsageBeforeGc().get(poolName);
+        MemoryUsage afterGcUsage = collectionUsage != null? collectionUsage : lastGcInfo.getMemoryUsageAfterGc().get(poolName);
+        return new MemoryPoolStat(poolName, usageThreshold, usage, lastGcInfo.getId(), lastGcInfo.getStartTime(),
+                lastGcInfo.getEndTime(), collectionThreshold, beforeGcUsage, afterGcUsage);
+    }
+
+    private static MemoryUsage toMemoryUsage(Object value) {
+        return value instanceof CompositeData? MemoryUsage.from((CompositeData) value) : null;
+    }
+}
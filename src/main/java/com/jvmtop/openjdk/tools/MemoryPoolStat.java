@@ -126,6 +126,6 @@ public class MemoryPoolStat {
      * null if no GC occurs.
      */
     public MemoryUsage getAfterGcUsage() {
-        return beforeGcUsage;
+        return afterGcUsage;
     }
 }
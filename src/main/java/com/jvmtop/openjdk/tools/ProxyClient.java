@@ -49,6 +49,7 @@ import java.rmi.Remote;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMISocketFactory;
 import java.rmi.server.RemoteObject;
 import java.rmi.server.RemoteObjectInvocationHandler;
 import java.rmi.server.RemoteRef;
@@ -56,6 +57,7 @@ import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+
 import static java.lang.management.ManagementFactory.*;
 
 public class ProxyClient
@@ -64,6 +66,11 @@ public class ProxyClient
     private static final String HOTSPOT_DIAGNOSTIC_MXBEAN_NAME = "com.sun.management:type=HotSpotDiagnostic";
     private static final SslRMIClientSocketFactory sslRMIClientSocketFactory = new SslRMIClientSocketFactory();
     private static final Map<String, ProxyClient> cache = Collections.synchronizedMap(new HashMap<String, ProxyClient>());
+    private static final int DEFAULT_MAX_CONNECTIONS = 100;
+    private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private static boolean maxConnectionsSet;
+    private static long notificationFetchTimeoutMillis = -1;
+    private static volatile boolean connectionOpened;
     private static final String rmiServerImplStubClassName = "javax.management.remote.rmi.RMIServerImpl_Stub";
     private static final Class<? extends Remote> rmiServerImplStubClass;
     static {
@@ -84,6 +91,10 @@ public class ProxyClient
     }
 
     private volatile boolean isDead = true;
+    private volatile long lastUsed;
+    private volatile boolean evicted;
+    private volatile boolean keepOpen;
+    private final Map<NotificationListener, List<ObjectName>> gcListeners = new IdentityHashMap<>();
     private String hostName;
     private String userName;
     private String password;
@@ -121,7 +132,11 @@ public class ProxyClient
     private RuntimeMXBean         runtimeMBean;
     private ThreadMXBean          threadMBean;
     private java.lang.management.OperatingSystemMXBean sunOperatingSystemMXBean;
+    private com.sun.management.ThreadMXBean sunThreadMXBean;
+    private boolean sunThreadMXBeanChecked;
     private List<GarbageCollectorMXBean>    garbageCollectorMBeans = null;
+    private List<MemoryPoolProxy>           memoryPoolProxies = null;
+    private volatile CallListener           callListener = CallListener.NONE;
 
     private ProxyClient(String p_hostName, int p_port, String userName, String password) throws IOException {
         connectionName = getConnectionName(p_hostName, p_port, userName);
@@ -273,6 +288,7 @@ public class ProxyClient
     }
 
     public void flush() {
+        lastUsed = System.currentTimeMillis();
         if (server != null) {
             server.flush();
         }
@@ -287,19 +303,107 @@ public class ProxyClient
             setConnectionState(ConnectionState.DISCONNECTED);
             throw e;
         }
+        lastUsed = System.currentTimeMillis();
+        evictConnections(this);
+    }
+
+    /**
+     * Sets the max. number of simultaneously open connections.
+     * If a new connection exceeds the limit, the least recently used ones are closed,
+     * except those kept open by {@link #setKeepOpen(boolean)}.
+     */
+    public static void setMaxConnections(int p_maxConnections) {
+        maxConnections = p_maxConnections;
+        maxConnectionsSet = true;
+    }
+
+    /**
+     * Makes room for the connections of the given number of remote jvms, which stay open in addition
+     * to those of the local jvms. The default max. is raised accordingly, a max. which was set
+     * and is not above the number of remote jvms is refused, as their connections would be
+     * closed and reopened in turn on every iteration.
+     */
+    public static void reserveConnections(int p_count) {
+        if (!maxConnectionsSet) {
+            maxConnections = p_count + DEFAULT_MAX_CONNECTIONS;
+        } else if (p_count >= maxConnections) {
+            throw new IllegalArgumentException("maxconnections (" + maxConnections
+                    + ") must be above the number of remote jvms (" + p_count + ")");
+        }
+    }
+
+    /**
+     * Limits the time to open RMI connections to remote jvms and to wait for the response of each remote call,
+     * so a jvm which stopped responding fails its update instead of blocking an update thread.
+     * The handshake of new connections is limited to the response timeout as well: a call to a hung jvm
+     * fails after about four times the response timeout, as RMI pings the jvm and retries the call
+     * on new connections. Notification fetches, which wait in the jvm until a GC notification arrives,
+     * return after half the response timeout, so they do not fail.
+     *
+     * The RMI transport reads its timeouts once, when it is first used,
+     * so this must be called before the first connection.
+     *
+     * @throws IllegalStateException if a connection has already been opened
+     */
+    public static void setCallTimeouts(int p_connectTimeoutMillis, long p_responseTimeoutMillis) throws IOException {
+        if (connectionOpened) {
+            throw new IllegalStateException("the RMI timeouts must be set before the first connection");
+        }
+        RMISocketFactory.setSocketFactory(new TimeoutRMISocketFactory(p_connectTimeoutMillis));
+        System.setProperty("sun.rmi.transport.tcp.handshakeTimeout",
+                Long.toString(Math.min(p_connectTimeoutMillis, p_responseTimeoutMillis)));
+        System.setProperty("sun.rmi.transport.tcp.responseTimeout", Long.toString(p_responseTimeoutMillis));
+        notificationFetchTimeoutMillis = p_responseTimeoutMillis / 2;
+    }
+
+    private static void evictConnections(ProxyClient current) {
+        List<ProxyClient> connected = new ArrayList<>();
+        synchronized (cache) {
+            for (ProxyClient proxyClient : cache.values()) {
+                if (proxyClient != current && !proxyClient.isDead() && !proxyClient.keepOpen) {
+                    connected.add(proxyClient);
+                }
+            }
+        }
+        int excess = connected.size() + 1 - maxConnections;
+        if (excess <= 0) {
+            return;
+        }
+        connected.sort((o1, o2) -> Long.compare(o1.lastUsed, o2.lastUsed));
+        for (int i = 0; i < excess && i < connected.size(); i++) {
+            ProxyClient proxyClient = connected.get(i);
+            logger.fine("closing least recently used connection " + proxyClient.connectionName());
+            proxyClient.evicted = true;
+            proxyClient.markAsDead();
+        }
+    }
+
+    /**
+     * Closes the connection and removes the proxy client from the cache,
+     * e.g. after the monitored jvm has terminated.
+     */
+    public static void release(ProxyClient proxyClient) {
+        synchronized (cache) {
+            cache.values().remove(proxyClient);
+        }
+        proxyClient.markAsDead();
     }
 
     private void tryConnect() throws IOException {
+        long start = System.currentTimeMillis();
+        connectionOpened = true;
         if (jmxUrl == null && "localhost".equals(hostName) && port == 0) {
             // Monitor self
             jmxc = null;
-            mbsc = ManagementFactory.getPlatformMBeanServer();
+            mbsc = TimingInvocationHandler.newTimingConnection(ManagementFactory.getPlatformMBeanServer(), this);
             server = Snapshot.newSnapshot(mbsc);
         } else {
             // Monitor another process
             if (lvm != null) {
                 if (!lvm.isManageable()) {
                     lvm.startManagementAgent();
+                    callListener.recordAttach(System.currentTimeMillis() - start);
+                    start = System.currentTimeMillis();
                     if (!lvm.isManageable()) {
                         // FIXME: what to throw
                         throw new IOException(lvm + "not manageable");
@@ -309,6 +413,11 @@ public class ProxyClient
                     jmxUrl = new JMXServiceURL(lvm.connectorAddress());
                 }
             }
+            Map<String, Object> env = new HashMap<>();
+            if (notificationFetchTimeoutMillis > 0) {
+                // a fetch must return before the response timeout set by setCallTimeouts
+                env.put("jmx.remote.x.notification.fetch.timeout", notificationFetchTimeoutMillis);
+            }
             // Need to pass in credentials ?
             if (userName == null && password == null) {
                 if (isVmConnector()) {
@@ -317,12 +426,11 @@ public class ProxyClient
                         checkSslConfig();
                     }
                     jmxc = new RMIConnector(stub, null);
-                    jmxc.connect();
+                    jmxc.connect(env);
                 } else {
-                    jmxc = JMXConnectorFactory.connect(jmxUrl);
+                    jmxc = JMXConnectorFactory.connect(jmxUrl, env);
                 }
             } else {
-                Map<String, String[]> env = new HashMap<>();
                 env.put(JMXConnector.CREDENTIALS, new String[] {userName, password});
                 if (isVmConnector()) {
                     // Check for SSL config on reconnection only
@@ -335,10 +443,12 @@ public class ProxyClient
                     jmxc = JMXConnectorFactory.connect(jmxUrl, env);
                 }
             }
-            mbsc = jmxc.getMBeanServerConnection();
+            mbsc = TimingInvocationHandler.newTimingConnection(jmxc.getMBeanServerConnection(), this);
             server = Snapshot.newSnapshot(mbsc);
         }
         isDead = false;
+        evicted = false;
+        callListener.recordConnect(System.currentTimeMillis() - start);
 
         try {
             ObjectName on = new ObjectName(THREAD_MXBEAN_NAME);
@@ -457,6 +567,7 @@ public class ProxyClient
     public String getPassword() { return password; }
 
     private void disconnect() {
+        removeGarbageCollectionListeners();
         // Reset remote stub
         stub = null;
         // Close MBeanServer connection
@@ -475,7 +586,10 @@ public class ProxyClient
         runtimeMBean = null;
         threadMBean = null;
         sunOperatingSystemMXBean = null;
+        sunThreadMXBean = null;
+        sunThreadMXBeanChecked = false;
         garbageCollectorMBeans = null;
+        memoryPoolProxies = null;
         // Set connection state to DISCONNECTED
         if (!isDead) {
             isDead = true;
@@ -612,6 +726,109 @@ public class ProxyClient
         return garbageCollectorMBeans;
     }
 
+    /**
+     * Returns the memory pools of the jvm, each with the garbage collectors managing it.
+     */
+    public synchronized List<MemoryPoolProxy> getMemoryPoolProxies() throws IOException {
+        if (memoryPoolProxies == null) {
+            Map<String, List<ObjectName>> collectorsByPool = new HashMap<>();
+            String[] collectedPools = new String[0];
+            Set<ObjectName> gcNames = server.queryNames(newObjectName(GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*"), null);
+            for (ObjectName gcName : gcNames) {
+                AttributeList attributes = getAttributes(gcName, new String[] { "MemoryPoolNames" });
+                if (attributes != null && !attributes.isEmpty()) {
+                    String[] names = (String[]) ((Attribute) attributes.get(0)).getValue();
+                    for (String poolName : names) {
+                        collectorsByPool.computeIfAbsent(poolName, k -> new ArrayList<>()).add(gcName);
+                    }
+                    if (names.length > collectedPools.length) {
+                        collectedPools = names;
+                    }
+                }
+            }
+            List<MemoryPoolProxy> proxies = new ArrayList<>();
+            Set<ObjectName> poolNames = server.queryNames(newObjectName(MEMORY_POOL_MXBEAN_DOMAIN_TYPE + ",*"), null);
+            for (ObjectName poolName : poolNames) {
+                AttributeList attributes = getAttributes(poolName, new String[] { "Name", "Type" });
+                if (attributes == null || attributes.size() < 2) {
+                    continue;
+                }
+                String name = (String) ((Attribute) attributes.get(0)).getValue();
+                boolean heap = MemoryType.HEAP.name().equals(((Attribute) attributes.get(1)).getValue());
+                List<ObjectName> collectors = collectorsByPool.getOrDefault(name, Collections.<ObjectName>emptyList());
+                proxies.add(new MemoryPoolProxy(this, poolName, name, heap, collectors));
+            }
+            // heap pools first; the old generation collector lists all pools it manages
+            // from young to old, so its order is used, other pools are sorted by name
+            List<String> order = Arrays.asList(collectedPools);
+            proxies.sort((a, b) -> {
+                if (a.isHeap() != b.isHeap()) {
+                    return a.isHeap()? -1 : 1;
+                }
+                int indexA = order.indexOf(a.getPoolName());
+                int indexB = order.indexOf(b.getPoolName());
+                if (indexA != indexB) {
+                    return indexA < 0? 1 : indexB < 0? -1 : Integer.compare(indexA, indexB);
+                }
+                return a.getPoolName().compareTo(b.getPoolName());
+            });
+            memoryPoolProxies = proxies;
+        }
+        return memoryPoolProxies;
+    }
+
+    /**
+     * Subscribes the listener to the GC notifications of all garbage collectors,
+     * filtered in the jvm so that only GC notifications are sent.
+     *
+     * @return number of collectors subscribed to
+     */
+    public synchronized int addGarbageCollectionListener(NotificationListener listener) throws IOException {
+        NotificationFilterSupport filter = new NotificationFilterSupport();
+        filter.enableType("com.sun.management.gc.notification");
+        List<ObjectName> subscribed = new ArrayList<>();
+        for (ObjectName gcName : server.queryNames(newObjectName(GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*"), null)) {
+            try {
+                server.addNotificationListener(gcName, listener, filter, null);
+                subscribed.add(gcName);
+            } catch (InstanceNotFoundException e) {
+                logger.log(Level.FINE, e.getMessage(), e);
+            }
+        }
+        if (!subscribed.isEmpty()) {
+            gcListeners.put(listener, subscribed);
+        }
+        return subscribed.size();
+    }
+
+    /**
+     * Unsubscribes all GC notification listeners, so the jvm stops queueing notifications
+     * for this connection before it is closed.
+     */
+    private void removeGarbageCollectionListeners() {
+        if (!isDead && server != null) {
+            for (Map.Entry<NotificationListener, List<ObjectName>> entry : gcListeners.entrySet()) {
+                for (ObjectName gcName : entry.getValue()) {
+                    try {
+                        server.removeNotificationListener(gcName, entry.getKey());
+                    } catch (Exception e) {
+                        logger.log(Level.FINE, e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        gcListeners.clear();
+    }
+
+    private static ObjectName newObjectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            // should not reach here
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     public synchronized MemoryMXBean getMemoryMXBean() throws IOException {
         if (hasPlatformMXBeans && memoryMBean == null) {
             memoryMBean = newPlatformMXBeanProxy(server, MEMORY_MXBEAN_NAME, MemoryMXBean.class);
@@ -656,6 +873,25 @@ public class ProxyClient
         return sunOperatingSystemMXBean;
     }
 
+    /**
+     * Returns the HotSpot specific ThreadMXBean which supports bulk operations
+     * like getThreadCpuTime(long[]) or null if the remote jvm does not provide it.
+     */
+    public synchronized com.sun.management.ThreadMXBean getSunThreadMXBean() throws IOException {
+        if (hasPlatformMXBeans && !sunThreadMXBeanChecked) {
+            sunThreadMXBeanChecked = true;
+            try {
+                if (server.isInstanceOf(new ObjectName(THREAD_MXBEAN_NAME), "com.sun.management.ThreadMXBean")) {
+                    sunThreadMXBean = newPlatformMXBeanProxy(server, THREAD_MXBEAN_NAME,
+                            com.sun.management.ThreadMXBean.class);
+                }
+            } catch (InstanceNotFoundException | MalformedObjectNameException e) {
+                return null;
+            }
+        }
+        return sunThreadMXBean;
+    }
+
     public <T> T getMXBean(ObjectName objName, Class<T> interfaceClass) throws IOException {
         return newPlatformMXBeanProxy(server, objName.toString(), interfaceClass);
     }
@@ -677,6 +913,28 @@ public class ProxyClient
     }
 
     public boolean isDead() { return isDead; }
+
+    /**
+     * @return true if the connection was closed to stay within the max. number of connections,
+     * not because it failed; it can be reopened right away
+     */
+    public boolean isEvicted() { return evicted; }
+
+    /**
+     * Exempts the connection from being closed to stay within the max. number of connections,
+     * e.g. while the monitored jvm is polled every iteration and would reopen it immediately.
+     */
+    public void setKeepOpen(boolean p_keepOpen) { keepOpen = p_keepOpen; }
+
+    /**
+     * @return the listener receiving the remote calls, attach and connect times of this connection
+     */
+    CallListener getCallListener() { return callListener; }
+
+    /**
+     * Passes the timings of this connection to the given listener, e.g. the statistics of the monitored jvm.
+     */
+    public void setCallListener(CallListener p_callListener) { callListener = p_callListener; }
     boolean isConnected() { return !isDead(); }
     boolean hasPlatformMXBeans() { return this.hasPlatformMXBeans; }
     boolean hasHotSpotDiagnosticMXBean() { return this.hasHotSpotDiagnosticMXBean; }
@@ -720,8 +978,9 @@ public class ProxyClient
 
     public long getProcessCpuTime() throws Exception {
         try {
+            boolean j9Mode = lvm != null && lvm.isJ9Mode();
             String osMXBeanClassName = "com.sun.management.OperatingSystemMXBean";
-            if (lvm.isJ9Mode()) {
+            if (j9Mode) {
                 osMXBeanClassName = "com.ibm.lang.management.OperatingSystemMXBean";
             }
             if (Proxy.isProxyClass(getOperatingSystemMXBean().getClass())) {
@@ -730,7 +989,7 @@ public class ProxyClient
                         .invoke(getOperatingSystemMXBean(),
                                 Class.forName(osMXBeanClassName).getMethod("getProcessCpuTime"),
                                 null);
-                if (lvm.isJ9Mode()) {
+                if (j9Mode) {
                     //this is very strange, J9 does return the value in "100ns units"
                     //which violates the management spec
                     //see http://publib.boulder.ibm.com/infocenter/javasdk/v6r0/index.jsp?topic=%2Fcom.ibm.java.api.60.doc%2Fcom.ibm.lang.management%2Fcom%2Fibm%2Flang%2Fmanagement%2FOperatingSystemMXBean.html
@@ -0,0 +1,38 @@
+package com.jvmtop.openjdk.tools;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMISocketFactory;
+
+/**
+ * RMI socket factory which limits the time to open a connection, so an unreachable host
+ * fails within the timeout instead of blocking an update thread until the TCP connect times out.
+ * No read timeout is set on the socket, ProxyClient sets the RMI response timeout instead,
+ * which only applies while the response of a remote call is awaited.
+ */
+class TimeoutRMISocketFactory extends RMISocketFactory {
+    private final int connectTimeoutMillis;
+
+    TimeoutRMISocketFactory(int p_connectTimeoutMillis) {
+        connectTimeoutMillis = p_connectTimeoutMillis;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return new ServerSocket(port);
+    }
+}
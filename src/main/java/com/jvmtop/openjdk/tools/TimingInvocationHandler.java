@@ -0,0 +1,45 @@
+package com.jvmtop.openjdk.tools;
+
+import javax.management.MBeanServerConnection;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Times each call on an MBeanServerConnection and passes it to the CallListener of the ProxyClient.
+ * Wrapped below the snapshot connection, so only calls which reach the jvm are counted.
+ */
+class TimingInvocationHandler implements InvocationHandler {
+    private final MBeanServerConnection conn;
+    private final ProxyClient client;
+
+    private TimingInvocationHandler(MBeanServerConnection p_conn, ProxyClient p_client) {
+        conn = p_conn;
+        client = p_client;
+    }
+
+    static MBeanServerConnection newTimingConnection(MBeanServerConnection conn, ProxyClient client) {
+        return (MBeanServerConnection) Proxy.newProxyInstance(
+                TimingInvocationHandler.class.getClassLoader(),
+                new Class<?>[] {MBeanServerConnection.class},
+                new TimingInvocationHandler(conn, client));
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(conn, args);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = method.invoke(conn, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            client.getCallListener().recordRpc(System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.jvmtop.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Folds sampled stack traces into a trie of frames, one node per distinct call path.
+ *
+ * Frames (class and method, line numbers are ignored) are interned into ids and the nodes
+ * are kept in primitive arrays, with the children found through a LongIntTable
+ * keyed by (parent, frame). Adding a sample therefore only increments counters once the
+ * call paths are known.
+ *
+ * Frames of classes matching one of the filter prefixes (e.g. "java.") are not reported
+ * as self frame if they were called by an unfiltered frame; their self samples are
+ * attributed to the innermost unfiltered caller instead.
+ */
+public class CallTree {
+    public static final int ROOT = 0;
+    private static final int MAX_NODES = 1 << 20;
+
+    private final String[] filters;
+
+    private String[] classNames = new String[256];
+    private String[] methodNames = new String[256];
+    private boolean[] frameFiltered = new boolean[256];
+    private int frameCount;
+    private int[] frameTable = new int[512]; // frame id + 1, 0 if empty
+
+    private int[] nodeFrames = new int[1024];
+    private int[] parents = new int[1024];
+    private int[] selfFrames = new int[1024];
+    private boolean[] recursive = new boolean[1024];
+    private long[] selfCounts = new long[1024];
+    private long[] totalCounts = new long[1024];
+    private int nodeCount = 1;
+    private final LongIntTable children = new LongIntTable();
+
+    /**
+     * @param p_filters prefixes of class names which are not reported as self frame
+     */
+    public CallTree(String[] p_filters) {
+        filters = p_filters;
+        nodeFrames[ROOT] = -1;
+        parents[ROOT] = -1;
+        selfFrames[ROOT] = -1;
+    }
+
+    /**
+     * Adds a sampled stack trace, the innermost frame first (as returned by ThreadInfo.getStackTrace()).
+     *
+     * @return the node of the innermost frame
+     */
+    public int add(StackTraceElement[] stack) {
+        int node = ROOT;
+        totalCounts[ROOT]++;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            int child = getOrAddChild(node, intern(stack[i].getClassName(), stack[i].getMethodName()));
+            if (child < 0) {
+                // too many call paths, the remaining frames are attributed to the caller
+                break;
+            }
+            node = child;
+            totalCounts[node]++;
+        }
+        selfCounts[node]++;
+        return node;
+    }
+
+    /**
+     * @return number of samples added
+     */
+    public long getSampleCount() { return totalCounts[ROOT]; }
+
+    public int getFrameCount() { return frameCount; }
+
+    public String getClassName(int frame) { return classNames[frame]; }
+
+    public String getMethodName(int frame) { return methodNames[frame]; }
+
+    /**
+     * @return the frame the self samples of the node are attributed to, -1 for the root
+     */
+    public int getSelfFrame(int node) { return selfFrames[node]; }
+
+    /**
+     * Sums up the self samples of each frame, after attributing filtered frames to their callers.
+     *
+     * @param selfByFrame array of at least getFrameCount() elements, indexed by frame id
+     */
+    public void sumSelf(long[] selfByFrame) {
+        Arrays.fill(selfByFrame, 0, frameCount, 0);
+        for (int node = 1; node < nodeCount; node++) {
+            if (selfCounts[node] > 0) {
+                selfByFrame[selfFrames[node]] += selfCounts[node];
+            }
+        }
+    }
+
+    /**
+     * Sums up the samples in which each frame occurs anywhere in the stack,
+     * recursive calls are counted once.
+     *
+     * @param totalByFrame array of at least getFrameCount() elements, indexed by frame id
+     */
+    public void sumTotal(long[] totalByFrame) {
+        Arrays.fill(totalByFrame, 0, frameCount, 0);
+        for (int node = 1; node < nodeCount; node++) {
+            if (!recursive[node]) {
+                totalByFrame[nodeFrames[node]] += totalCounts[node];
+            }
+        }
+    }
+
+    private int intern(String className, String methodName) {
+        int mask = frameTable.length - 1;
+        for (int i = hash(className, methodName) & mask; ; i = (i + 1) & mask) {
+            int frame = frameTable[i] - 1;
+            if (frame < 0) {
+                return addFrame(i, className, methodName);
+            }
+            if (methodNames[frame].equals(methodName) && classNames[frame].equals(className)) {
+                return frame;
+            }
+        }
+    }
+
+    private int addFrame(int slot, String className, String methodName) {
+        int frame = frameCount++;
+        if (frame == classNames.length) {
+            classNames = Arrays.copyOf(classNames, frame * 2);
+            methodNames = Arrays.copyOf(methodNames, frame * 2);
+            frameFiltered = Arrays.copyOf(frameFiltered, frame * 2);
+        }
+        classNames[frame] = className;
+        methodNames[frame] = methodName;
+        frameFiltered[frame] = isFiltered(className);
+        frameTable[slot] = frame + 1;
+        if (frameCount * 2 > frameTable.length) {
+            rehashFrames();
+        }
+        return frame;
+    }
+
+    private boolean isFiltered(String className) {
+        for (String filter : filters) {
+            if (className.startsWith(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rehashFrames() {
+        frameTable = new int[frameTable.length * 2];
+        int mask = frameTable.length - 1;
+        for (int frame = 0; frame < frameCount; frame++) {
+            int i = hash(classNames[frame], methodNames[frame]) & mask;
+            while (frameTable[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            frameTable[i] = frame + 1;
+        }
+    }
+
+    private static int hash(String className, String methodName) {
+        int h = className.hashCode() * 31 + methodName.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the child node of the given parent for the given frame, -1 if it could not be added
+     */
+    private int getOrAddChild(int parent, int frame) {
+        long key = ((long) parent << 32) | frame;
+        int child = children.get(key);
+        if (child >= 0) {
+            return child;
+        }
+        if (nodeCount == MAX_NODES) {
+            return -1;
+        }
+        int node = addNode(parent, frame);
+        children.put(key, node);
+        return node;
+    }
+
+    private int addNode(int parent, int frame) {
+        int node = nodeCount++;
+        if (node == nodeFrames.length) {
+            int capacity = node * 2;
+            nodeFrames = Arrays.copyOf(nodeFrames, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            selfFrames = Arrays.copyOf(selfFrames, capacity);
+            recursive = Arrays.copyOf(recursive, capacity);
+            selfCounts = Arrays.copyOf(selfCounts, capacity);
+            totalCounts = Arrays.copyOf(totalCounts, capacity);
+        }
+        nodeFrames[node] = frame;
+        parents[node] = parent;
+        selfCounts[node] = 0;
+        totalCounts[node] = 0;
+        // a filtered frame reports its self samples to the innermost unfiltered caller, if any
+        int callerSelfFrame = selfFrames[parent];
+        selfFrames[node] = frameFiltered[frame] && callerSelfFrame >= 0 && !frameFiltered[callerSelfFrame]?
+                callerSelfFrame : frame;
+        boolean isRecursive = false;
+        for (int ancestor = parent; ancestor != ROOT; ancestor = parents[ancestor]) {
+            if (nodeFrames[ancestor] == frame) {
+                isRecursive = true;
+                break;
+            }
+        }
+        recursive[node] = isRecursive;
+        return node;
+    }
+}
@@ -0,0 +1,228 @@
+package com.jvmtop.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Table of the number of instances and bytes per class of a series of class histograms,
+ * as printed by the GC.class_histogram diagnostic command (jmap -histo), keeping the
+ * values of the current, the previous and the first histogram.
+ *
+ * The histogram text is parsed in a single pass without splitting it into lines or tokens;
+ * class names are looked up by their character range in an open-addressing table,
+ * so only classes seen for the first time allocate a String.
+ */
+public class HeapHistogram {
+    private String[] classNames = new String[1024];
+    private int[] classHashes = new int[1024];
+    private long[] instances = new long[1024];
+    private long[] bytes = new long[1024];
+    private long[] previousInstances = new long[1024];
+    private long[] previousBytes = new long[1024];
+    private long[] firstInstances = new long[1024];
+    private long[] firstBytes = new long[1024];
+    private int classCount;
+    private int[] classTable = new int[2048]; // class id + 1, 0 if empty
+
+    private int sampleCount;
+    private long firstTime;
+    private long previousTime;
+    private long time;
+    private long totalInstances;
+    private long totalBytes;
+
+    /**
+     * Adds the next histogram, taken at the given time.
+     *
+     * @param text the output of GC.class_histogram
+     * @return number of classes in the histogram
+     */
+    public int parse(CharSequence text, long timestamp) {
+        System.arraycopy(instances, 0, previousInstances, 0, classCount);
+        System.arraycopy(bytes, 0, previousBytes, 0, classCount);
+        Arrays.fill(instances, 0, classCount, 0);
+        Arrays.fill(bytes, 0, classCount, 0);
+        totalInstances = 0;
+        totalBytes = 0;
+
+        int rows = 0;
+        int length = text.length();
+        int pos = 0;
+        while (pos < length) {
+            int end = pos;
+            while (end < length && text.charAt(end) != '\n') {
+                end++;
+            }
+            if (parseRow(text, pos, end)) {
+                rows++;
+            }
+            pos = end + 1;
+        }
+
+        sampleCount++;
+        previousTime = sampleCount > 1? time : timestamp;
+        time = timestamp;
+        if (sampleCount == 1) {
+            firstTime = timestamp;
+            System.arraycopy(instances, 0, firstInstances, 0, classCount);
+            System.arraycopy(bytes, 0, firstBytes, 0, classCount);
+            System.arraycopy(instances, 0, previousInstances, 0, classCount);
+            System.arraycopy(bytes, 0, previousBytes, 0, classCount);
+        }
+        return rows;
+    }
+
+    /**
+     * Parses a row "   1:   12345   67890  className [(module)]", other lines are ignored.
+     */
+    private boolean parseRow(CharSequence text, int pos, int end) {
+        pos = skipSpaces(text, pos, end);
+        int digits = pos;
+        while (pos < end && isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        if (pos == digits || pos == end || text.charAt(pos) != ':') {
+            return false;
+        }
+        pos = skipSpaces(text, pos + 1, end);
+        long rowInstances = 0;
+        for (; pos < end && isDigit(text.charAt(pos)); pos++) {
+            rowInstances = rowInstances * 10 + (text.charAt(pos) - '0');
+        }
+        pos = skipSpaces(text, pos, end);
+        long rowBytes = 0;
+        for (; pos < end && isDigit(text.charAt(pos)); pos++) {
+            rowBytes = rowBytes * 10 + (text.charAt(pos) - '0');
+        }
+        pos = skipSpaces(text, pos, end);
+        int nameEnd = pos;
+        while (nameEnd < end && !Character.isWhitespace(text.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == pos) {
+            return false;
+        }
+        int id = intern(text, pos, nameEnd);
+        // a class may occur more than once if it was loaded by several class loaders
+        instances[id] += rowInstances;
+        bytes[id] += rowBytes;
+        totalInstances += rowInstances;
+        totalBytes += rowBytes;
+        return true;
+    }
+
+    private static int skipSpaces(CharSequence text, int pos, int end) {
+        while (pos < end && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t' || text.charAt(pos) == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private int intern(CharSequence text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        int mask = classTable.length - 1;
+        for (int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask) {
+            int id = classTable[i] - 1;
+            if (id < 0) {
+                return addClass(i, h, text.subSequence(from, to).toString());
+            }
+            if (classHashes[id] == h && regionEquals(classNames[id], text, from, to)) {
+                return id;
+            }
+        }
+    }
+
+    private static boolean regionEquals(String name, CharSequence text, int from, int to) {
+        if (name.length() != to - from) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (name.charAt(i - from) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addClass(int slot, int hash, String name) {
+        int id = classCount++;
+        if (id == classNames.length) {
+            int capacity = id * 2;
+            classNames = Arrays.copyOf(classNames, capacity);
+            classHashes = Arrays.copyOf(classHashes, capacity);
+            instances = Arrays.copyOf(instances, capacity);
+            bytes = Arrays.copyOf(bytes, capacity);
+            previousInstances = Arrays.copyOf(previousInstances, capacity);
+            previousBytes = Arrays.copyOf(previousBytes, capacity);
+            firstInstances = Arrays.copyOf(firstInstances, capacity);
+            firstBytes = Arrays.copyOf(firstBytes, capacity);
+        }
+        classNames[id] = name;
+        classHashes[id] = hash;
+        instances[id] = 0;
+        bytes[id] = 0;
+        previousInstances[id] = 0;
+        previousBytes[id] = 0;
+        firstInstances[id] = 0;
+        firstBytes[id] = 0;
+        classTable[slot] = id + 1;
+        if (classCount * 2 > classTable.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        classTable = new int[classTable.length * 2];
+        int mask = classTable.length - 1;
+        for (int id = 0; id < classCount; id++) {
+            int h = classHashes[id];
+            int i = (h ^ (h >>> 16)) & mask;
+            while (classTable[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            classTable[i] = id + 1;
+        }
+    }
+
+    /**
+     * @return number of histograms parsed
+     */
+    public int getSampleCount() { return sampleCount; }
+
+    /**
+     * @return number of classes seen in any of the histograms
+     */
+    public int getClassCount() { return classCount; }
+
+    /**
+     * @return the class name as printed in the histogram, e.g. java.lang.String or [B
+     */
+    public String getClassName(int id) { return classNames[id]; }
+
+    public long getInstances(int id) { return instances[id]; }
+    public long getBytes(int id) { return bytes[id]; }
+    public long getTotalInstances() { return totalInstances; }
+    public long getTotalBytes() { return totalBytes; }
+
+    public long getInstancesSincePrevious(int id) { return instances[id] - previousInstances[id]; }
+    public long getBytesSincePrevious(int id) { return bytes[id] - previousBytes[id]; }
+    public long getInstancesSinceFirst(int id) { return instances[id] - firstInstances[id]; }
+    public long getBytesSinceFirst(int id) { return bytes[id] - firstBytes[id]; }
+
+    /**
+     * @return milliseconds between the first and the current histogram
+     */
+    public long getMillisSinceFirst() { return time - firstTime; }
+
+    /**
+     * @return milliseconds between the previous and the current histogram
+     */
+    public long getMillisSincePrevious() { return time - previousTime; }
+}
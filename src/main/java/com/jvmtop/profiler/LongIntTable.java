@@ -0,0 +1,74 @@
+package com.jvmtop.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from long keys to non-negative int values, without boxing.
+ */
+class LongIntTable {
+    private long[] keys = new long[64];
+    private int[] values = newValues(64);
+    private int size;
+
+    /**
+     * @return the value of the key, -1 if absent
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (values[i] < 0 || keys[i] == key) {
+                return values[i];
+            }
+        }
+    }
+
+    /**
+     * @param value non-negative value
+     */
+    void put(long key, int value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] >= 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] < 0) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+    }
+
+    int size() { return size; }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = newValues(keys.length);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] >= 0) {
+                int i = hash(oldKeys[j]) & mask;
+                while (values[i] >= 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int[] newValues(int capacity) {
+        int[] values = new int[capacity];
+        Arrays.fill(values, -1);
+        return values;
+    }
+}
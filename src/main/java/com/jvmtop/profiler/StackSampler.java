@@ -0,0 +1,221 @@
+package com.jvmtop.profiler;
+
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jvmtop.monitor.ThreadStatsTable;
+import com.jvmtop.monitor.VMInfo;
+
+/**
+ * Samples the stacks of the threads of a jvm and folds them into a CallTree.
+ *
+ * The sampler runs in its own daemon thread and uses the connection of the VMInfo.
+ * In CPU mode a sample costs up to three remote calls: the thread ids (refreshed once per second),
+ * the cpu times of all threads in bulk and the stack traces of the threads whose cpu time
+ * increased since the previous sample. Only these threads are sampled if they are RUNNABLE.
+ * In WALL mode the stack traces of all threads are fetched in one call and all of them are sampled,
+ * the samples of blocked and waiting threads are additionally grouped in a WaitTable.
+ *
+ * The time spent in the remote calls is measured and the interval between samples is
+ * stretched so that the sampler is busy for at most the given share of the time (the budget),
+ * on average over the last samples.
+ */
+public class StackSampler implements Runnable {
+    /**
+     * The threads which are sampled.
+     */
+    public enum Mode {
+        /**
+         * runnable threads which consumed cpu time since the previous sample
+         */
+        CPU,
+        /**
+         * all threads, whatever their state (wall-clock time)
+         */
+        WALL
+    }
+
+    private static final Logger logger = Logger.getLogger("jvmtop");
+    private static final int MAX_DEPTH = 128;
+    private static final long THREAD_IDS_REFRESH_MILLIS = 1000;
+    private static final int MAX_ERRORS = 10;
+
+    private final VMInfo vmInfo;
+    private final Mode mode;
+    private final CallTree callTree;
+    private final WaitTable waitTable = new WaitTable();
+    private final long intervalMillis;
+    private final double budget;
+    private final ThreadStatsTable threadStats = new ThreadStatsTable();
+    private Thread thread;
+    private volatile boolean running;
+
+    private long[] ids;
+    private long idsTime;
+    private long[] activeIds = new long[64];
+    private final long startTime = System.currentTimeMillis();
+    private volatile long sampleCount;
+    private volatile long samplingNanos;
+    private volatile long currentIntervalMillis;
+    // consecutive failed samples, the profiling stops after MAX_ERRORS
+    private volatile int errorCount;
+    private double averageSpentMillis;
+
+    /**
+     * @param p_intervalMillis min. time between two samples
+     * @param p_budget max. share of the time spent sampling, e.g. 0.05
+     * @param p_filters prefixes of class names which are not reported as self frame
+     */
+    public StackSampler(VMInfo p_vmInfo, Mode p_mode, long p_intervalMillis, double p_budget, String[] p_filters) {
+        vmInfo = p_vmInfo;
+        mode = p_mode;
+        intervalMillis = Math.max(1, p_intervalMillis);
+        budget = p_budget;
+        currentIntervalMillis = intervalMillis;
+        callTree = new CallTree(p_filters);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "jvmtop-profiler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public void run() {
+        while (running) {
+            long start = System.nanoTime();
+            try {
+                sample();
+                errorCount = 0;
+            } catch (Exception e) {
+                logger.log(Level.FINE, "error during profiling (PID=" + vmInfo.getVMId() + ")", e);
+                if (++errorCount > MAX_ERRORS) {
+                    running = false;
+                    return;
+                }
+            }
+            long spent = System.nanoTime() - start;
+            samplingNanos += spent;
+            sampleCount++;
+            // stretch the interval if sampling takes more than the budget allows,
+            // based on a moving average so that single slow calls do not stall the sampling
+            averageSpentMillis = 0.8 * averageSpentMillis + 0.2 * spent / 1e6;
+            currentIntervalMillis = Math.max(intervalMillis, (long) (averageSpentMillis / budget));
+            try {
+                Thread.sleep(Math.max(0, currentIntervalMillis - spent / 1000000));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sample() throws Exception {
+        ThreadMXBean threadMXBean = vmInfo.getThreadMXBean();
+        long now = System.currentTimeMillis();
+        if (ids == null || now - idsTime >= THREAD_IDS_REFRESH_MILLIS) {
+            ids = threadMXBean.getAllThreadIds();
+            idsTime = now;
+        }
+        if (mode == Mode.WALL) {
+            sampleAll(threadMXBean.getThreadInfo(ids, MAX_DEPTH));
+            return;
+        }
+        int activeCount = selectActiveThreads(now);
+        if (activeCount == 0) {
+            return;
+        }
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(Arrays.copyOf(activeIds, activeCount), MAX_DEPTH);
+        synchronized (callTree) {
+            for (ThreadInfo info : infos) {
+                if (info != null && info.getThreadState() == Thread.State.RUNNABLE && info.getStackTrace().length > 0) {
+                    callTree.add(info.getStackTrace());
+                }
+            }
+        }
+    }
+
+    private void sampleAll(ThreadInfo[] infos) {
+        synchronized (callTree) {
+            for (ThreadInfo info : infos) {
+                if (info != null && info.getStackTrace().length > 0) {
+                    int frame = callTree.getSelfFrame(callTree.add(info.getStackTrace()));
+                    if (frame >= 0) {
+                        // samples attributed to the root (the tree is full) have no frame to wait in
+                        waitTable.add(info, frame);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Selects the threads which used cpu time since the previous sample into activeIds.
+     * If the cpu times cannot be fetched in bulk, all threads are selected.
+     *
+     * @return the number of selected threads
+     */
+    private int selectActiveThreads(long now) throws Exception {
+        if (activeIds.length < ids.length) {
+            activeIds = new long[ids.length];
+        }
+        com.sun.management.ThreadMXBean sunThreadMXBean = vmInfo.getProxyClient().getSunThreadMXBean();
+        if (sunThreadMXBean == null) {
+            System.arraycopy(ids, 0, activeIds, 0, ids.length);
+            return ids.length;
+        }
+        long[] cpuTimes = sunThreadMXBean.getThreadCpuTime(ids);
+        int count = 0;
+        threadStats.beginSample();
+        for (int i = 0; i < ids.length; i++) {
+            if (cpuTimes[i] < 0) {
+                continue;
+            }
+            int slot = threadStats.record(ids[i], cpuTimes[i], -1, now);
+            if (threadStats.getDeltaCpuTime(slot) > 0) {
+                activeIds[count++] = ids[i];
+            }
+        }
+        threadStats.endSample();
+        return count;
+    }
+
+    /**
+     * @return the call tree, reads must be synchronized on it
+     */
+    public CallTree getCallTree() { return callTree; }
+
+    /**
+     * @return the samples of blocked and waiting threads (WALL mode only), reads must be synchronized on the call tree
+     */
+    public WaitTable getWaitTable() { return waitTable; }
+
+    public Mode getMode() { return mode; }
+
+    public boolean isRunning() { return running; }
+
+    public long getSampleCount() { return sampleCount; }
+
+    /**
+     * @return the current time between two samples, stretched if sampling exceeded the budget
+     */
+    public long getCurrentIntervalMillis() { return currentIntervalMillis; }
+
+    /**
+     * @return the share of the time spent sampling since the start
+     */
+    public double getOverhead() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0? samplingNanos / 1e6 / elapsed : 0;
+    }
+}
@@ -0,0 +1,222 @@
+package com.jvmtop.profiler;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups the samples of threads which are BLOCKED, WAITING or TIMED_WAITING into sites:
+ * the frame the thread waits in, the lock it waits for and its state.
+ *
+ * For each site the thread owning the lock most often is kept, and for each owner thread
+ * the number of samples in which other threads were waiting for one of its locks.
+ * Sites, locks and owners are kept in primitive arrays indexed through open-addressing
+ * tables, so adding a sample of a known site does not allocate.
+ * Like the nodes of the CallTree the tables are capped, once a table is full the samples of new
+ * sites, locks or owners still count in the sample count but are not attributed.
+ */
+public class WaitTable {
+    private static final int MAX_SITES = 1 << 16;
+    private static final int MAX_LOCKS = 1 << 16;
+    private static final int MAX_OWNERS = 1 << 14;
+    private static final int MAX_SITE_OWNERS = 1 << 18;
+
+    private final LongIntTable siteIds = new LongIntTable();
+    private int siteCount;
+    private int[] siteFrames = new int[64];
+    private int[] siteLocks = new int[64];
+    private Thread.State[] siteStates = new Thread.State[64];
+    private long[] siteSamples = new long[64];
+    private int[] siteTopOwners = new int[64];
+    private long[] siteTopOwnerSamples = new long[64];
+
+    private final Map<String, Integer> lockClassIds = new HashMap<>();
+    private final LongIntTable lockIds = new LongIntTable();
+    private int lockCount;
+    private String[] lockClassNames = new String[64];
+    private int[] lockHashes = new int[64];
+
+    private final LongIntTable ownerIds = new LongIntTable();
+    private int ownerCount;
+    private String[] ownerNames = new String[16];
+    private long[] ownerSamples = new long[16];
+
+    private final LongIntTable siteOwnerIds = new LongIntTable();
+    private long[] siteOwnerSamples = new long[64];
+
+    private long sampleCount;
+
+    /**
+     * Adds the sample of a thread, if it is blocked or waiting.
+     *
+     * @param frame the frame the thread waits in, see CallTree.getSelfFrame(int)
+     */
+    public void add(ThreadInfo info, int frame) {
+        Thread.State state = info.getThreadState();
+        if (state != Thread.State.BLOCKED && state != Thread.State.WAITING && state != Thread.State.TIMED_WAITING) {
+            return;
+        }
+        sampleCount++;
+        LockInfo lockInfo = info.getLockInfo();
+        int lock = internLock(lockInfo);
+        if (lock < 0 && lockInfo != null) {
+            return;
+        }
+        int site = internSite(frame, lock, state);
+        if (site < 0) {
+            return;
+        }
+        siteSamples[site]++;
+
+        long ownerId = info.getLockOwnerId();
+        if (ownerId < 0) {
+            return;
+        }
+        int owner = internOwner(ownerId, info.getLockOwnerName());
+        if (owner < 0) {
+            return;
+        }
+        ownerSamples[owner]++;
+        long key = ((long) site << 32) | owner;
+        int siteOwner = siteOwnerIds.get(key);
+        if (siteOwner < 0) {
+            siteOwner = siteOwnerIds.size();
+            if (siteOwner == MAX_SITE_OWNERS) {
+                return;
+            }
+            siteOwnerIds.put(key, siteOwner);
+            if (siteOwner == siteOwnerSamples.length) {
+                siteOwnerSamples = Arrays.copyOf(siteOwnerSamples, siteOwner * 2);
+            }
+            siteOwnerSamples[siteOwner] = 0;
+        }
+        long samples = ++siteOwnerSamples[siteOwner];
+        if (samples > siteTopOwnerSamples[site]) {
+            siteTopOwners[site] = owner;
+            siteTopOwnerSamples[site] = samples;
+        }
+    }
+
+    /**
+     * @return number of samples of blocked or waiting threads
+     */
+    public long getSampleCount() { return sampleCount; }
+
+    public int getSiteCount() { return siteCount; }
+
+    public int getSiteFrame(int site) { return siteFrames[site]; }
+
+    public Thread.State getSiteState(int site) { return siteStates[site]; }
+
+    public long getSiteSamples(int site) { return siteSamples[site]; }
+
+    /**
+     * @return the lock waited for at the site as class@hash, null if the thread did not wait for a lock
+     */
+    public String getSiteLock(int site) {
+        int lock = siteLocks[site];
+        return lock < 0? null : lockClassNames[lock] + '@' + Integer.toHexString(lockHashes[lock]);
+    }
+
+    /**
+     * @return the owner holding the lock of the site most often, -1 if none was seen
+     */
+    public int getSiteTopOwner(int site) { return siteTopOwners[site]; }
+
+    public long getSiteTopOwnerSamples(int site) { return siteTopOwnerSamples[site]; }
+
+    public int getOwnerCount() { return ownerCount; }
+
+    public String getOwnerName(int owner) { return ownerNames[owner]; }
+
+    /**
+     * @return number of samples in which other threads were waiting for a lock of the owner
+     */
+    public long getOwnerSamples(int owner) { return ownerSamples[owner]; }
+
+    /**
+     * @return the id of the lock, -1 if the thread did not wait for a lock or the locks are full
+     */
+    private int internLock(LockInfo lockInfo) {
+        if (lockInfo == null) {
+            return -1;
+        }
+        String className = lockInfo.getClassName();
+        Integer classId = lockClassIds.get(className);
+        if (classId == null) {
+            classId = lockClassIds.size();
+            lockClassIds.put(className, classId);
+        }
+        long key = ((long) classId << 32) | (lockInfo.getIdentityHashCode() & 0xffffffffL);
+        int lock = lockIds.get(key);
+        if (lock < 0) {
+            if (lockCount == MAX_LOCKS) {
+                return -1;
+            }
+            lock = lockCount++;
+            if (lock == lockClassNames.length) {
+                lockClassNames = Arrays.copyOf(lockClassNames, lock * 2);
+                lockHashes = Arrays.copyOf(lockHashes, lock * 2);
+            }
+            lockClassNames[lock] = className;
+            lockHashes[lock] = lockInfo.getIdentityHashCode();
+            lockIds.put(key, lock);
+        }
+        return lock;
+    }
+
+    /**
+     * @return the id of the site, -1 if the sites are full
+     */
+    private int internSite(int frame, int lock, Thread.State state) {
+        long key = ((long) frame << 32) | ((long) (lock + 1) << 3) | state.ordinal();
+        int site = siteIds.get(key);
+        if (site < 0) {
+            if (siteCount == MAX_SITES) {
+                return -1;
+            }
+            site = siteCount++;
+            if (site == siteFrames.length) {
+                int capacity = site * 2;
+                siteFrames = Arrays.copyOf(siteFrames, capacity);
+                siteLocks = Arrays.copyOf(siteLocks, capacity);
+                siteStates = Arrays.copyOf(siteStates, capacity);
+                siteSamples = Arrays.copyOf(siteSamples, capacity);
+                siteTopOwners = Arrays.copyOf(siteTopOwners, capacity);
+                siteTopOwnerSamples = Arrays.copyOf(siteTopOwnerSamples, capacity);
+            }
+            siteFrames[site] = frame;
+            siteLocks[site] = lock;
+            siteStates[site] = state;
+            siteSamples[site] = 0;
+            siteTopOwners[site] = -1;
+            siteTopOwnerSamples[site] = 0;
+            siteIds.put(key, site);
+        }
+        return site;
+    }
+
+    /**
+     * @return the id of the owner, -1 if the owners are full
+     */
+    private int internOwner(long ownerId, String ownerName) {
+        int owner = ownerIds.get(ownerId);
+        if (owner < 0) {
+            if (ownerCount == MAX_OWNERS) {
+                return -1;
+            }
+            owner = ownerCount++;
+            if (owner == ownerNames.length) {
+                ownerNames = Arrays.copyOf(ownerNames, owner * 2);
+                ownerSamples = Arrays.copyOf(ownerSamples, owner * 2);
+            }
+            ownerSamples[owner] = 0;
+            ownerIds.put(ownerId, owner);
+        }
+        // threads may be renamed, keep the latest name
+        ownerNames[owner] = ownerName;
+        return owner;
+    }
+}
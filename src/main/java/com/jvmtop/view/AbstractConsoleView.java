@@ -21,10 +21,16 @@
 package com.jvmtop.view;
 
 import com.jvmtop.Config;
-
+import com.jvmtop.export.MetricStream;
+import com.jvmtop.monitor.Recorder;
+import com.jvmtop.monitor.Replayer;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Formatter;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,36 +42,52 @@ import java.util.Map;
  */
 public abstract class AbstractConsoleView implements ConsoleView {
     protected final Config config;
+    protected Recorder recorder;
+    protected Replayer replayer;
+    protected final MetricStream stream;
     private boolean shouldExit = false;
 
     protected AbstractConsoleView(Config p_config) {
         config = p_config;
+        stream = config != null && config.getFormat() != null?
+                new MetricStream(config.getFormat(), new FileOutputStream(FileDescriptor.out).getChannel()) : null;
+    }
+
+    /**
+     * Opens the recording file if the metrics should be recorded or replayed.
+     */
+    protected void openRecording() throws IOException {
+        if (config.getReplayFile() != null) {
+            replayer = Replayer.open(Paths.get(config.getReplayFile()));
+        } else if (config.getRecordFile() != null) {
+            recorder = Recorder.open(Paths.get(config.getRecordFile()));
+        }
+    }
+
+    /**
+     * Appends the time of the replayed tick.
+     */
+    protected void printReplayTime(StringBuilder sb) {
+        TextFormat.appendTime(sb.append(" REPLAY "), replayer.getTimestamp()).append('\n');
     }
 
     /**
-     * Formats a long value containing "number of bytes" to its megabyte representation.
+     * Formats a long value containing "number of bytes", scaled to k, m, g or t.
      * If the value is negative, "n/a" will be returned.
      *
-     * TODO: implement automatic scale to bigger units if this makes sense
-     * (e.g. output 4.3g instead of 4324m)
+     * Views should append to their screen buffer with {@link TextFormat#appendBytes} instead.
      */
     public String toMB(long bytes) {
-        if(bytes<0) {
-            return "n/a";
-        }
-        return "" + (bytes / 1024 / 1024) + "m";
+        return TextFormat.appendBytes(new StringBuilder(8), bytes, 0).toString();
     }
 
     /**
-     * Formats number of milliseconds to a HH:MM representation
+     * Formats number of milliseconds to a HH:MM representation (days and hours from 100 hours on).
      *
-     * TODO: implement automatic scale (e.g. 1d 7h instead of 31:13m)
+     * Views should append to their screen buffer with {@link TextFormat#appendDuration} instead.
      */
     public String toHHMM(long millis) {
-        StringBuilder sb = new StringBuilder();
-        Formatter formatter = new Formatter(sb);
-        formatter.format("%02d:%02dm", millis / 1000 / 3600, (millis / 1000 / 60) % 60);
-        return sb.toString();
+        return TextFormat.appendDuration(new StringBuilder(8), millis, 0).toString();
     }
 
     /**
@@ -98,8 +120,8 @@ public abstract class AbstractConsoleView implements ConsoleView {
     }
 
     public boolean shouldExit() { return shouldExit; }
-    public boolean isTopBarRequired() { return true; }
-    public boolean isClearingRequired() { return true; }
+    public boolean isTopBarRequired() { return stream == null; }
+    public boolean isClearingRequired() { return stream == null; }
     protected void exit() { shouldExit = true; }
 
     /**
@@ -125,9 +147,26 @@ public abstract class AbstractConsoleView implements ConsoleView {
         return result;
     }
 
+    /**
+     * Sleeps for the given time, or while replaying for the recorded time until the next tick.
+     */
     public void sleep(long millis) throws Exception {
+        if (replayer != null) {
+            long delay = replayer.getDelayToNextTick();
+            if (delay > 0) {
+                Thread.sleep((long) (delay / config.getReplaySpeed()));
+            }
+            return;
+        }
         Thread.sleep(millis);
     }
 
-    public void last() throws Exception { }
+    public void last() throws Exception {
+        if (recorder != null) {
+            recorder.close();
+        }
+        if (replayer != null) {
+            replayer.close();
+        }
+    }
 }
@@ -26,9 +26,9 @@ package com.jvmtop.view;
 public interface ConsoleView
 {
     /**
-     * Prints the view to STDOUT.
+     * Prints the view into the given screen buffer, which is rendered to STDOUT afterwards.
      */
-    void printView() throws Exception;
+    void printView(Screen screen) throws Exception;
 
     /**
      * Finalizer for view - end files, flush buffers
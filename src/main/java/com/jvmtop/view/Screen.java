@@ -0,0 +1,284 @@
+package com.jvmtop.view;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the output of a view for one iteration and renders it to the terminal.
+ *
+ * In differential mode, the previous frame is kept and only the changed parts
+ * of each line are sent, using ANSI cursor positioning. This avoids flicker and
+ * keeps the traffic low over slow connections, as most cells stay the same
+ * from one iteration to the next. The buffers are reused for all frames.
+ * The frame is clipped to the size of the terminal, as wrapped or scrolled lines would
+ * move the cells away from the positions of the previous frame. The size is queried again
+ * when the terminal signals a resize, and every 10 seconds. If the size is unknown,
+ * every frame is redrawn completely.
+ */
+public class Screen {
+    private static final String ESC = "\033[";
+    private static final String CLEAR_TO_END_OF_LINE = ESC + "K";
+    private static final String CLEAR_SCREEN = ESC + "H" + ESC + "2J";
+    // fallback if resizes are not signalled
+    private static final long SIZE_QUERY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * How a frame is written to the terminal.
+     */
+    public enum Mode {
+        /**
+         * frames are appended to the output, e.g. if output is redirected
+         */
+        APPEND,
+        /**
+         * the terminal is cleared with the given clear sequence and the whole frame is written
+         */
+        REDRAW,
+        /**
+         * only the changes to the previous frame are written, the frame is clipped to the terminal
+         */
+        DIFF
+    }
+
+    private final Mode mode;
+    private final String clearSequence;
+    private final StringBuilder frame = new StringBuilder(4096);
+    private final Formatter formatter = new Formatter(frame);
+    private final StringBuilder out = new StringBuilder(4096);
+    private final StringBuilder previous = new StringBuilder(4096);
+    private int[] lineStarts = new int[64];
+    private int[] lineEnds = new int[64];
+    private int[] previousLineStarts = new int[64];
+    private int[] previousLineEnds = new int[64];
+    private int previousLineCount = -1;
+    private TerminalSize size;
+    private boolean sizeQueried;
+    private long sizeQueryTime;
+    private volatile boolean resized;
+    private char[] chars = new char[4096];
+    private Writer writer;
+    private PrintStream writerStream;
+
+    public Screen(Mode p_mode, String p_clearSequence) {
+        mode = p_mode;
+        clearSequence = p_clearSequence;
+        if (mode == Mode.DIFF) {
+            TerminalSize.onResize(() -> resized = true);
+        }
+    }
+
+    public Screen(Mode p_mode) {
+        this(p_mode, CLEAR_SCREEN);
+    }
+
+    public Screen printf(String format, Object... args) {
+        formatter.format(format, args);
+        return this;
+    }
+
+    public Screen print(String str) {
+        frame.append(str);
+        return this;
+    }
+
+    public Screen println(String str) {
+        frame.append(str).append('\n');
+        return this;
+    }
+
+    public Screen println() {
+        frame.append('\n');
+        return this;
+    }
+
+    /**
+     * @return the buffer of the current frame, for appending without intermediate strings
+     */
+    public StringBuilder buffer() {
+        return frame;
+    }
+
+    /**
+     * @return the number of terminal rows left below the lines of the current frame,
+     *         -1 if frames are not clipped to the terminal or its size is not known yet
+     */
+    public int getRemainingRows() {
+        if (mode != Mode.DIFF || size == null) {
+            return -1;
+        }
+        int lines = 0;
+        for (int i = 0; i < frame.length(); i++) {
+            if (frame.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        // the last row is kept free for the cursor
+        return Math.max(0, size.rows - 1 - lines);
+    }
+
+    /**
+     * Writes the current frame to the given stream and starts a new frame.
+     */
+    public void render(PrintStream stream) throws IOException {
+        out.setLength(0);
+        switch (mode) {
+            case APPEND:
+                out.append(frame);
+                break;
+            case REDRAW:
+                out.append(clearSequence).append(frame);
+                break;
+            case DIFF:
+                updateSize();
+                if (size == null) {
+                    out.append(CLEAR_SCREEN).append(frame);
+                    invalidate();
+                } else {
+                    renderDiff(size.rows, size.columns);
+                }
+                break;
+        }
+        frame.setLength(0);
+        if (writer == null || writerStream != stream) {
+            writer = new OutputStreamWriter(stream);
+            writerStream = stream;
+        }
+        if (chars.length < out.length()) {
+            chars = new char[out.length() * 2];
+        }
+        out.getChars(0, out.length(), chars, 0);
+        writer.write(chars, 0, out.length());
+        writer.flush();
+    }
+
+    /**
+     * Queries the terminal size after a resize was signalled or the query interval elapsed,
+     * as each query runs <code>stty</code> in a new process.
+     */
+    private void updateSize() {
+        long now = System.nanoTime();
+        if (!resized && sizeQueried && now - sizeQueryTime < SIZE_QUERY_INTERVAL_NANOS) {
+            return;
+        }
+        resized = false;
+        sizeQueried = true;
+        sizeQueryTime = now;
+        TerminalSize current = TerminalSize.query();
+        if (current == null || !current.sameAs(size)) {
+            invalidate();
+        }
+        size = current;
+    }
+
+    /**
+     * Forces the next frame to be drawn completely, e.g. after the terminal was resized.
+     */
+    public void invalidate() {
+        previousLineCount = -1;
+    }
+
+    private void renderDiff(int rows, int columns) {
+        // keep the last row free for the cursor, writing to it would scroll the terminal
+        int lineCount = Math.min(indexLines(), rows - 1);
+        for (int row = 0; row < lineCount; row++) {
+            lineEnds[row] = Math.min(lineEnds[row], lineStarts[row] + columns);
+        }
+        if (previousLineCount < 0) {
+            out.append(CLEAR_SCREEN);
+            for (int row = 0; row < lineCount; row++) {
+                out.append(frame, lineStarts[row], lineEnds[row]).append('\n');
+            }
+        } else {
+            for (int row = 0; row < lineCount; row++) {
+                appendLineDiff(row);
+            }
+            for (int row = lineCount; row < previousLineCount; row++) {
+                if (previousLineEnds[row] > previousLineStarts[row]) {
+                    moveTo(row, 0);
+                    out.append(CLEAR_TO_END_OF_LINE);
+                }
+            }
+            // leave the cursor below the frame
+            moveTo(lineCount, 0);
+        }
+        // keep the frame for the next comparison
+        previous.setLength(0);
+        previous.append(frame);
+        previousLineStarts = copy(lineStarts, previousLineStarts, lineCount);
+        previousLineEnds = copy(lineEnds, previousLineEnds, lineCount);
+        previousLineCount = lineCount;
+    }
+
+    /**
+     * Writes the characters of a line between the first and the last changed column.
+     */
+    private void appendLineDiff(int row) {
+        int lineStart = lineStarts[row];
+        int length = lineEnds[row] - lineStart;
+        int prevStart = row < previousLineCount? previousLineStarts[row] : 0;
+        int prevLength = row < previousLineCount? previousLineEnds[row] - prevStart : 0;
+        int start = 0;
+        while (start < length && start < prevLength
+                && frame.charAt(lineStart + start) == previous.charAt(prevStart + start)) {
+            start++;
+        }
+        if (start == length && length == prevLength) {
+            return;
+        }
+        int end = length;
+        if (length == prevLength) {
+            while (end > start && frame.charAt(lineStart + end - 1) == previous.charAt(prevStart + end - 1)) {
+                end--;
+            }
+        }
+        moveTo(row, start);
+        out.append(frame, lineStart + start, lineStart + end);
+        if (length < prevLength) {
+            out.append(CLEAR_TO_END_OF_LINE);
+        }
+    }
+
+    private void moveTo(int row, int column) {
+        out.append(ESC).append(row + 1).append(';').append(column + 1).append('H');
+    }
+
+    /**
+     * Determines the start and end offsets of all lines of the current frame.
+     *
+     * @return the number of lines
+     */
+    private int indexLines() {
+        int count = 0;
+        int start = 0;
+        int length = frame.length();
+        for (int i = 0; i <= length; i++) {
+            if (i == length && start == length) {
+                break;
+            }
+            if (i == length || frame.charAt(i) == '\n') {
+                if (count == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, count * 2);
+                    lineEnds = Arrays.copyOf(lineEnds, count * 2);
+                }
+                lineStarts[count] = start;
+                lineEnds[count] = (i > start && frame.charAt(i - 1) == '\r')? i - 1 : i;
+                count++;
+                start = i + 1;
+            }
+        }
+        return count;
+    }
+
+    private static int[] copy(int[] source, int[] target, int length) {
+        if (target.length < length) {
+            target = new int[source.length];
+        }
+        System.arraycopy(source, 0, target, 0, length);
+        return target;
+    }
+}
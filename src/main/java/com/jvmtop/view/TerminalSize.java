@@ -0,0 +1,95 @@
+package com.jvmtop.view;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import sun.misc.Signal;
+
+/**
+ * The number of rows and columns of the controlling terminal.
+ *
+ * The jdk offers no api for it, so it is read with <code>stty size</code> from /dev/tty.
+ */
+final class TerminalSize {
+    private static final File TTY = new File("/dev/tty");
+
+    final int rows;
+    final int columns;
+
+    private TerminalSize(int p_rows, int p_columns) {
+        rows = p_rows;
+        columns = p_columns;
+    }
+
+    /**
+     * @return the current size of the terminal, null if there is no terminal or its size is unknown
+     */
+    static TerminalSize query() {
+        if (!TTY.exists()) {
+            return null;
+        }
+        try {
+            Process process = new ProcessBuilder("stty", "size")
+                    .redirectInput(TTY)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            String line;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII))) {
+                line = reader.readLine();
+            }
+            if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                process.destroy();
+                return null;
+            }
+            return line == null? null : parse(line);
+        } catch (IOException e) {
+            Logger.getLogger("jvmtop").log(Level.FINE, "could not read the terminal size", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Runs the given action when the terminal is resized (SIGWINCH).
+     *
+     * @return false if the platform does not signal resizes
+     */
+    static boolean onResize(Runnable action) {
+        try {
+            Signal.handle(new Signal("WINCH"), signal -> action.run());
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses the output of <code>stty size</code>, "rows columns".
+     */
+    static TerminalSize parse(String p_line) {
+        String[] fields = p_line.trim().split("\\s+");
+        if (fields.length != 2) {
+            return null;
+        }
+        try {
+            int rows = Integer.parseInt(fields[0]);
+            int columns = Integer.parseInt(fields[1]);
+            return rows > 0 && columns > 0? new TerminalSize(rows, columns) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    boolean sameAs(TerminalSize other) {
+        return other != null && other.rows == rows && other.columns == columns;
+    }
+}
@@ -0,0 +1,211 @@
+package com.jvmtop.view;
+
+import java.nio.charset.Charset;
+import java.util.TimeZone;
+
+import com.jvmtop.monitor.MetricHistory;
+
+/**
+ * Fixed-width formatting of numbers, percentages, byte sizes and durations,
+ * appending directly to a reusable StringBuilder.
+ *
+ * In contrast to String.format, no intermediate strings or Formatter instances are created.
+ * Like printf, a positive width right-aligns the value, a negative width left-aligns it
+ * and a width of 0 appends the value without padding.
+ */
+public final class TextFormat {
+    private static final String NOT_AVAILABLE = "n/a";
+    private static final char[] BYTE_UNITS = { 'k', 'm', 'g', 't' };
+    private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
+    private static final char[] SPARK_CHARS = "UTF-8".equals(Charset.defaultCharset().name())?
+            "\u2581\u2582\u2583\u2584\u2585\u2586\u2587\u2588".toCharArray() : "_.-:=+*#".toCharArray();
+
+    private TextFormat() { }
+
+    /**
+     * Appends the given text, truncated to the given width (like %-15.15s or %15.15s).
+     * A null text is shown as "n/a".
+     */
+    public static StringBuilder appendText(StringBuilder sb, CharSequence text, int width) {
+        if (text == null) {
+            text = NOT_AVAILABLE;
+        }
+        return appendText(sb, text, 0, text.length(), width);
+    }
+
+    /**
+     * Appends the given range of the text, truncated to the given width.
+     */
+    public static StringBuilder appendText(StringBuilder sb, CharSequence text, int from, int to, int width) {
+        int max = Math.abs(width);
+        if (max > 0 && to - from > max) {
+            to = from + max;
+        }
+        int start = sb.length();
+        sb.append(text, from, to);
+        return align(sb, start, width);
+    }
+
+    /**
+     * Appends the rightmost characters of the given text which fit into the given width.
+     */
+    public static StringBuilder appendTail(StringBuilder sb, CharSequence text, int width) {
+        int length = text.length();
+        return appendText(sb, text, Math.max(0, length - Math.abs(width)), length, width);
+    }
+
+    public static StringBuilder appendNumber(StringBuilder sb, long value, int width) {
+        int start = sb.length();
+        sb.append(value);
+        return align(sb, start, width);
+    }
+
+    /**
+     * Appends the given value with a fixed number of decimals (like %5.2f).
+     * NaN and infinite values are shown as "n/a".
+     */
+    public static StringBuilder appendFixed(StringBuilder sb, double value, int decimals, int width) {
+        int start = sb.length();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(NOT_AVAILABLE);
+            return align(sb, start, width);
+        }
+        long factor = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * factor);
+        if (value < 0 && scaled != 0) {
+            sb.append('-');
+        }
+        sb.append(scaled / factor);
+        if (decimals > 0) {
+            sb.append('.');
+            long fraction = scaled % factor;
+            for (long f = factor / 10; f > 1 && fraction < f; f /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return align(sb, start, width);
+    }
+
+    /**
+     * Appends the given ratio (1.0 = 100%) as percentage with two decimals, followed by '%'.
+     * The width excludes the percent sign.
+     */
+    public static StringBuilder appendPercent(StringBuilder sb, double ratio, int width) {
+        return appendFixed(sb, ratio * 100, 2, width).append('%');
+    }
+
+    /**
+     * Appends a number of bytes scaled to the largest unit of k, m, g or t which
+     * keeps at most four digits, e.g. 512k, 1453m or 12g. Values below 1m are shown in k,
+     * negative values as "n/a".
+     */
+    public static StringBuilder appendBytes(StringBuilder sb, long bytes, int width) {
+        int start = sb.length();
+        if (bytes < 0) {
+            sb.append(NOT_AVAILABLE);
+            return align(sb, start, width);
+        }
+        long value = bytes / 1024;
+        int unit = 0;
+        if (value >= 1024) {
+            value /= 1024;
+            unit++;
+            while (value >= 10000 && unit < BYTE_UNITS.length - 1) {
+                value /= 1024;
+                unit++;
+            }
+        }
+        sb.append(value).append(BYTE_UNITS[unit]);
+        return align(sb, start, width);
+    }
+
+    /**
+     * Appends a difference of bytes like appendBytes, always preceded by its sign, e.g. +512k or -12m.
+     */
+    public static StringBuilder appendSignedBytes(StringBuilder sb, long bytes, int width) {
+        int start = sb.length();
+        sb.append(bytes < 0? '-' : '+');
+        appendBytes(sb, Math.abs(bytes), 0);
+        return align(sb, start, width);
+    }
+
+    /**
+     * Appends a duration as hours and minutes (e.g. 31:13m), from 100 hours on
+     * as days and hours (e.g. 4d 07h).
+     */
+    public static StringBuilder appendDuration(StringBuilder sb, long millis, int width) {
+        int start = sb.length();
+        long minutes = Math.max(0, millis) / 1000 / 60;
+        long hours = minutes / 60;
+        if (hours < 100) {
+            appendTwoDigits(sb, hours).append(':');
+            appendTwoDigits(sb, minutes % 60).append('m');
+        } else {
+            sb.append(hours / 24).append("d ");
+            appendTwoDigits(sb, hours % 24).append('h');
+        }
+        return align(sb, start, width);
+    }
+
+    /**
+     * Appends the local time of day of the given timestamp as HH:MM:SS (like %tT).
+     */
+    public static StringBuilder appendTime(StringBuilder sb, long millis) {
+        long local = millis + TIME_ZONE.getOffset(millis);
+        long seconds = Math.floorMod(local / 1000, 24 * 60 * 60);
+        appendTwoDigits(sb, seconds / 3600).append(':');
+        appendTwoDigits(sb, (seconds / 60) % 60).append(':');
+        return appendTwoDigits(sb, seconds % 60);
+    }
+
+    /**
+     * Appends the latest samples of the history as a sparkline of the given width,
+     * one character per sample, scaled between min and max. Missing samples are shown as spaces.
+     * Block characters are used if the default charset is UTF-8, otherwise ASCII characters.
+     */
+    public static StringBuilder appendSparkline(StringBuilder sb, MetricHistory history, int width,
+                                                double min, double max) {
+        int count = Math.min(width, history.size());
+        appendSpaces(sb, width - count);
+        double range = max - min;
+        for (int i = history.size() - count; i < history.size(); i++) {
+            double ratio = range > 0? (history.get(i) - min) / range : 0;
+            int level = (int) Math.round(ratio * (SPARK_CHARS.length - 1));
+            sb.append(SPARK_CHARS[Math.max(0, Math.min(SPARK_CHARS.length - 1, level))]);
+        }
+        return sb;
+    }
+
+    public static StringBuilder appendSpaces(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append(' ');
+        }
+        return sb;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, long value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+
+    /**
+     * Pads the text appended since start to the given width.
+     */
+    private static StringBuilder align(StringBuilder sb, int start, int width) {
+        int padding = Math.abs(width) - (sb.length() - start);
+        if (padding <= 0) {
+            return sb;
+        }
+        if (width < 0) {
+            return appendSpaces(sb, padding);
+        }
+        for (int i = 0; i < padding; i++) {
+            sb.insert(start, ' ');
+        }
+        return sb;
+    }
+}
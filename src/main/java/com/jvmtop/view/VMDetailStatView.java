@@ -25,43 +25,75 @@ import com.jvmtop.monitor.VMInfo;
 import com.jvmtop.monitor.VMInfoState;
 import com.jvmtop.openjdk.tools.LocalVirtualMachine;
 
+import static com.jvmtop.view.TextFormat.*;
+
 /*
  * "detail" view, printing detail metrics of a specific jvm in a vmstat manner.
  */
 public class VMDetailStatView extends AbstractConsoleView {
-    private final VMInfo vmInfo;
+    private VMInfo vmInfo;
 
     public VMDetailStatView(Config p_config) throws Exception {
         super(p_config);
-        Integer pid = p_config.getPid();
-        LocalVirtualMachine localVirtualMachine = LocalVirtualMachine.getLocalVirtualMachine(pid);
-        vmInfo = VMInfo.processNewVM(localVirtualMachine, pid);
+        openRecording();
+        if (replayer == null) {
+            Integer pid = p_config.getPid();
+            LocalVirtualMachine localVirtualMachine = LocalVirtualMachine.getLocalVirtualMachine(pid);
+            vmInfo = VMInfo.processNewVM(localVirtualMachine, pid);
+        }
     }
 
-    public void printView() throws Exception {
-        vmInfo.update();
+    public void printView(Screen screen) throws Exception {
+        long timestamp;
+        if (replayer != null) {
+            if (!replayer.next()) {
+                exit();
+                return;
+            }
+            vmInfo = replayer.getVMInfo(config.getPid());
+            if (vmInfo == null) {
+                return;
+            }
+            timestamp = replayer.getTimestamp();
+        } else {
+            vmInfo.update();
+            timestamp = System.currentTimeMillis();
+            if (recorder != null) {
+                recorder.beginTick(timestamp);
+                recorder.record(vmInfo);
+                recorder.endTick();
+            }
+        }
+        if (stream != null) {
+            stream.write(timestamp, vmInfo);
+            if (vmInfo.getState() != VMInfoState.ATTACHED) {
+                exit();
+            }
+            return;
+        }
+        if (replayer != null) {
+            appendTime(screen.buffer(), timestamp).append(' ');
+        }
 
         if (vmInfo.getState() == VMInfoState.ATTACHED_UPDATE_ERROR) {
-            System.out.println("ERROR: Could not fetch telemetries - Process terminated.");
+            screen.println("ERROR: Could not fetch telemetries - Process terminated.");
             exit();
         } else if (vmInfo.getState() != VMInfoState.ATTACHED) {
-            System.out.println("ERROR: Could not attach to process.");
+            screen.println("ERROR: Could not attach to process.");
             exit();
         } else {
-            printVM(vmInfo);
+            printVM(screen, vmInfo);
         }
     }
 
-    private void printVM(VMInfo vmInfo) throws Exception {
-        String deadlockState = vmInfo.hasDeadlockThreads()? "!D" : "";
-
-        System.out.printf("%5d %5s %5.2f%% %5.2f%% %4d %2.2s%n",
-                vmInfo.getId(),
-                toMB(vmInfo.getHeapUsed()),
-                vmInfo.getCpuLoad() * 100,
-                vmInfo.getGcLoad() * 100,
-                vmInfo.getThreadCount(),
-                deadlockState);
+    private void printVM(Screen screen, VMInfo vmInfo) throws Exception {
+        StringBuilder sb = screen.buffer();
+        appendNumber(sb, vmInfo.getId(), 5);
+        appendBytes(sb.append(' '), vmInfo.getHeapUsed(), 5);
+        appendPercent(sb.append(' '), vmInfo.getCpuLoad(), 5);
+        appendPercent(sb.append(' '), vmInfo.getGcLoad(), 5);
+        appendNumber(sb.append(' '), vmInfo.getThreadCount(), 4);
+        appendText(sb.append(' '), vmInfo.hasDeadlockThreads()? "!D" : "", 2).append('\n');
     }
 
     @Override
@@ -23,16 +23,19 @@ package com.jvmtop.view;
 
 import java.lang.management.ThreadInfo;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import com.jvmtop.Config;
+import com.jvmtop.monitor.GcPauseMonitor;
+import com.jvmtop.monitor.MetricHistory;
+import com.jvmtop.monitor.ThreadSampler;
 import com.jvmtop.monitor.VMInfo;
 import com.jvmtop.monitor.VMInfoState;
 import com.jvmtop.openjdk.tools.LocalVirtualMachine;
 
+import static com.jvmtop.view.TextFormat.*;
+
 /**
  * "detail" view, printing detail metrics of a specific jvm.
  * Also printing the top threads (based on the current CPU usage)
@@ -40,31 +43,134 @@ import com.jvmtop.openjdk.tools.LocalVirtualMachine;
 public class VMDetailView extends AbstractConsoleView
 {
     private VMInfo vmInfo;
-
-    //TODO: refactor
-    private Map<Long, Long> previousThreadCPUMillis   = new HashMap<>();
+    private ThreadSampler threadSampler;
+    private String constantHeader;
 
     public VMDetailView(Config p_config) throws Exception {
         super(p_config);
-        LocalVirtualMachine localVirtualMachine = LocalVirtualMachine.getLocalVirtualMachine(p_config.getPid());
-        vmInfo = VMInfo.processNewVM(localVirtualMachine, p_config.getPid());
+        openRecording();
+        if (replayer == null) {
+            LocalVirtualMachine localVirtualMachine = LocalVirtualMachine.getLocalVirtualMachine(p_config.getPid());
+            vmInfo = VMInfo.processNewVM(localVirtualMachine, p_config.getPid());
+            vmInfo.enableGcPauses();
+            threadSampler = new ThreadSampler(vmInfo);
+            threadSampler.setOrder(p_config.getThreadOrder());
+        }
     }
 
-    public void printView() throws Exception {
-        vmInfo.update();
+    public void printView(Screen screen) throws Exception {
+        if (replayer != null) {
+            if (!replayer.next()) {
+                exit();
+                return;
+            }
+            printReplayTime(screen.buffer());
+            vmInfo = replayer.getVMInfo(config.getPid());
+            threadSampler = replayer.getThreadSampler(config.getPid());
+            if (vmInfo == null) {
+                screen.println(" PID " + config.getPid() + " was not recorded at this time.");
+                return;
+            }
+        } else {
+            vmInfo.update();
+            if (recorder != null) {
+                recorder.beginTick(System.currentTimeMillis());
+                recorder.record(vmInfo);
+            }
+        }
 
         if (vmInfo.getState() == VMInfoState.ATTACHED_UPDATE_ERROR) {
-            System.out.println("ERROR: Could not fetch telemetries - Process terminated?");
+            screen.println("ERROR: Could not fetch telemetries - Process terminated?");
             exit();
             return;
         }
         if (vmInfo.getState() != VMInfoState.ATTACHED) {
-            System.out.println("ERROR: Could not attach to process.");
+            screen.println("ERROR: Could not attach to process.");
             exit();
             return;
         }
 
+        if (constantHeader == null) {
+            constantHeader = createConstantHeader();
+        }
+        StringBuilder sb = screen.buffer();
+        sb.append(constantHeader);
+        appendDuration(sb.append(" UP: "), vmInfo.getUptime(), -7);
+        appendNumber(sb.append(" #THR: "), vmInfo.getThreadCount(), -4);
+        appendNumber(sb.append(" #THRPEAK: "), vmInfo.getPeakThreadCount(), -4);
+        appendNumber(sb.append(" #THRCREATED: "), vmInfo.getTotalStartedThreadCount(), -4);
+        appendText(sb.append(" USER: "), vmInfo.getOSUser(), -12).append('\n');
+
+        appendDuration(sb.append(" GC-Time: "), vmInfo.getGcTime(), -7);
+        appendNumber(sb.append("  #GC-Runs: "), vmInfo.getGcCount(), -8);
+        appendNumber(sb.append("  #TotalLoadedClasses: "), vmInfo.getTotalLoadedClassCount(), -8).append('\n');
+        if (vmInfo.getGcPauses() != null) {
+            printGcPauses(sb, vmInfo.getGcPauses());
+        }
+
+        appendPercent(sb.append(" CPU: "), vmInfo.getCpuLoad(), 5);
+        appendPercent(sb.append(" GC: "), vmInfo.getGcLoad(), 5);
+        appendBytes(sb.append(" HEAP:"), vmInfo.getHeapUsed(), 5);
+        appendBytes(sb.append(" /"), vmInfo.getHeapMax(), 5);
+        appendBytes(sb.append(" NONHEAP:"), vmInfo.getNonHeapUsed(), 5);
+        appendBytes(sb.append(" /"), vmInfo.getNonHeapMax(), 5).append('\n');
+        if (MetricHistory.getDefaultCapacity() > 0) {
+            printHistory(sb);
+        }
+
+        if (vmInfo.hasDeadlockThreads()) {
+            printDeadlocks(screen);
+        }
+        screen.println();
+        printTopThreads(screen);
+    }
+
+    /**
+     * Prints the pause percentiles, frequency and the most recent collection of each collector.
+     */
+    private static void printGcPauses(StringBuilder sb, GcPauseMonitor gcPauses) {
+        for (int i = 0; i < gcPauses.getCollectorCount(); i++) {
+            appendText(sb.append(" "), gcPauses.getName(i), -20);
+            appendNumber(sb.append(" p50:"), gcPauses.getPercentile(i, 0.5), 5).append("ms");
+            appendNumber(sb.append(" p99:"), gcPauses.getPercentile(i, 0.99), 5).append("ms");
+            appendNumber(sb.append(" max:"), gcPauses.getMax(i), 5).append("ms");
+            appendFixed(sb.append(' '), gcPauses.getFrequency(i), 1, 6).append("/min ");
+            appendText(sb, gcPauses.getLastCause(i), -20);
+            appendBytes(sb.append(' '), gcPauses.getLastUsedBefore(i), 0).append("->");
+            appendBytes(sb, gcPauses.getLastUsedAfter(i), 0).append('\n');
+        }
+    }
+
+    /**
+     * Prints sparklines and min / avg / max of cpu, gc and heap over the history window.
+     */
+    private void printHistory(StringBuilder sb) {
+        int width = MetricHistory.getDefaultCapacity();
+        MetricHistory cpu = vmInfo.getCpuLoadHistory();
+        appendSparkline(sb.append(" CPU:  "), cpu, width, 0, cpu.max());
+        appendPercent(sb.append(" min "), cpu.min(), 5);
+        appendPercent(sb.append(" avg "), cpu.average(), 5);
+        appendPercent(sb.append(" max "), cpu.max(), 5).append('\n');
+
+        MetricHistory gc = vmInfo.getGcLoadHistory();
+        appendSparkline(sb.append(" GC:   "), gc, width, 0, gc.max());
+        appendPercent(sb.append(" min "), gc.min(), 5);
+        appendPercent(sb.append(" avg "), gc.average(), 5);
+        appendPercent(sb.append(" max "), gc.max(), 5).append('\n');
+
+        MetricHistory heap = vmInfo.getHeapUsedHistory();
+        appendSparkline(sb.append(" HEAP: "), heap, width, 0, heap.max());
+        appendBytes(sb.append(" min "), (long) heap.min(), 6);
+        appendBytes(sb.append(" avg "), (long) heap.average(), 6);
+        appendBytes(sb.append(" max "), (long) heap.max(), 6).append('\n');
+    }
+
+    /**
+     * Formats the part of the header which does not change while the jvm is running.
+     */
+    private String createConstantHeader() {
         Map<String, String> properties = vmInfo.getSystemProperties();
+        StringBuilder sb = new StringBuilder();
 
         String command = properties.get("sun.java.command");
         if (command != null) {
@@ -73,98 +179,92 @@ public class VMDetailView extends AbstractConsoleView
             List<String> commandList = Arrays.asList(commandArray);
             commandList = commandList.subList(1, commandList.size());
 
-            System.out.printf(" PID %d: %s %n", vmInfo.getId(), commandArray[0]);
+            sb.append(" PID ").append(vmInfo.getId()).append(": ").append(commandArray[0]).append(" \n");
 
             String argJoin = join(commandList, " ");
             if (argJoin.length() > 67) {
-                System.out.printf(" ARGS: %s[...]%n", leftStr(argJoin, 67));
+                sb.append(" ARGS: ").append(leftStr(argJoin, 67)).append("[...]\n");
             } else {
-                System.out.printf(" ARGS: %s%n", argJoin);
+                sb.append(" ARGS: ").append(argJoin).append('\n');
             }
         } else {
-            System.out.printf(" PID %d: %n", vmInfo.getId());
-            System.out.printf(" ARGS: [UNKNOWN] %n");
+            sb.append(" PID ").append(vmInfo.getId()).append(": \n");
+            sb.append(" ARGS: [UNKNOWN] \n");
         }
 
-        String join = "\n " + join(vmInfo.getRuntimeMXBean().getInputArguments(), "\n ");
-//        if (join.length() > 65) {
-//            System.out.printf(" VMARGS: %s[...]%n", leftStr(join, 65));
-//        } else {
-            System.out.printf(" VMARGS: %s%n", join);
-//        }
-
-        System.out.printf(" VM: %s %s %s%n", properties.get("java.vendor"),
-                properties.get("java.vm.name"), properties.get("java.version"));
-        System.out.printf(" UP: %-7s #THR: %-4d #THRPEAK: %-4d #THRCREATED: %-4d USER: %-12s%n",
-                toHHMM(vmInfo.getRuntimeMXBean().getUptime()), vmInfo.getThreadCount(),
-                vmInfo.getThreadMXBean().getPeakThreadCount(),
-                vmInfo.getThreadMXBean().getTotalStartedThreadCount(), vmInfo.getOSUser());
-
-        System.out.printf(" GC-Time: %-7s  #GC-Runs: %-8d  #TotalLoadedClasses: %-8d%n",
-                toHHMM(vmInfo.getGcTime()), vmInfo.getGcCount(), vmInfo.getTotalLoadedClassCount());
-
-        System.out.printf(" CPU: %5.2f%% GC: %5.2f%% HEAP:%5s /%5s NONHEAP:%5s /%5s%n",
-                vmInfo.getCpuLoad() * 100, vmInfo.getGcLoad() * 100,
-                toMB(vmInfo.getHeapUsed()), toMB(vmInfo.getHeapMax()),
-                toMB(vmInfo.getNonHeapUsed()), toMB(vmInfo.getNonHeapMax()));
-
-        System.out.println();
-        printTopThreads();
+        sb.append(" VMARGS: \n ").append(join(vmInfo.getInputArguments(), "\n ")).append('\n');
+        sb.append(" VM: ").append(properties.get("java.vendor")).append(' ')
+                .append(properties.get("java.vm.name")).append(' ')
+                .append(properties.get("java.version")).append('\n');
+        return sb.toString();
     }
 
-    private void printTopThreads() throws Exception {
-        System.out.printf(" %6s %-" + config.getThreadNameDisplayWidth()
-                + "s  %13s %8s    %8s %5s %n", "TID", "NAME", "STATE", "CPU", "TOTALCPU", "BLOCKEDBY");
-//                + "s  %-13s %-8s    %8s %-5s %n", "TID", "NAME", "STATE", "CPU", "TOTALCPU", "BLOCKEDBY");
-
-        if (vmInfo.getThreadMXBean().isThreadCpuTimeSupported()) {
-            //TODO: move this into VMInfo?
-            Map<Long, Long> newThreadCPUMillis = new HashMap<>();
-            Map<Long, Long> cpuTimeMap = new TreeMap<>();
-            for (Long tid : vmInfo.getThreadMXBean().getAllThreadIds()) {
-                long threadCpuTime = vmInfo.getThreadMXBean().getThreadCpuTime(tid);
-                if (previousThreadCPUMillis.containsKey(tid)) {
-                    long deltaThreadCpuTime = threadCpuTime - previousThreadCPUMillis.get(tid);
-                    cpuTimeMap.put(tid, deltaThreadCpuTime);
-                }
-                newThreadCPUMillis.put(tid, threadCpuTime);
+    private void printDeadlocks(Screen screen) {
+        StringBuilder sb = screen.buffer();
+        sb.append(" DEADLOCK DETECTED:\n");
+        for (List<ThreadInfo> cycle : vmInfo.getDeadlockCycles()) {
+            for (ThreadInfo info : cycle) {
+                appendNumber(sb.append("  "), info.getThreadId(), 6).append(' ');
+                appendText(sb, info.getThreadName(), 0, Math.min(info.getThreadName().length(), config.getThreadNameDisplayWidth()), 0);
+                sb.append(" waits for ").append(info.getLockName()).append(" held by ");
+                sb.append(info.getLockOwnerId()).append(' ').append(info.getLockOwnerName()).append('\n');
+            }
+        }
+    }
+
+    private void printTopThreads(Screen screen) throws Exception {
+        StringBuilder sb = screen.buffer();
+        int nameWidth = config.getThreadNameDisplayWidth();
+        appendText(sb.append(' '), "TID", 6);
+        appendText(sb.append(' '), "NAME", -nameWidth);
+        appendText(sb.append("  "), "STATE", 13);
+        appendText(sb.append(' '), "CPU", 8);
+        appendText(sb.append("    "), "TOTALCPU", 8);
+        appendText(sb.append(' '), "ALLOC/S", 8);
+        sb.append(" BLOCKEDBY \n");
+
+        if (vmInfo.isThreadCpuTimeSupported() && replayer == null) {
+            threadSampler.sample(config.isDisplayedThreadLimit()? config.getNumberOfDisplayedThreads() : -1);
+            if (recorder != null) {
+                recorder.recordThreads(vmInfo, threadSampler);
             }
-            cpuTimeMap = sortByValue(cpuTimeMap, true);
-
-            int displayedThreads = 0;
-            for (Long tid : cpuTimeMap.keySet()) {
-                ThreadInfo info = vmInfo.getThreadMXBean().getThreadInfo(tid);
-                displayedThreads++;
-                if (config.isDisplayedThreadLimit() && displayedThreads > config.getNumberOfDisplayedThreads()) {
-                    break;
+        }
+        if (recorder != null) {
+            // the top threads are the last records of the tick
+            recorder.endTick();
+        }
+        if (vmInfo.isThreadCpuTimeSupported() && threadSampler != null) {
+            for (int i = 0; i < threadSampler.getTopCount(); i++) {
+                String name = threadSampler.getTopThreadName(i);
+                if (name == null) {
+                    continue;
                 }
-                if (info != null) {
-                    System.out.printf(" %6d %-" + config.getThreadNameDisplayWidth() + "s  %13s %5.2f%%    %5.2f%% %5s %n",
-//                    System.out.printf(" %6d %-" + threadNameDisplayWidth + "s  %-13s %5.2f%%    %5.2f%% %5s %n",
-                            tid,
-                            leftStr(info.getThreadName(), config.getThreadNameDisplayWidth()),
-                            info.getThreadState(),
-                            getThreadCPUUtilization(cpuTimeMap.get(tid), vmInfo.getDeltaUptime()),
-                            getThreadCPUUtilization(
-                                    vmInfo.getThreadMXBean().getThreadCpuTime(tid),
-                                    vmInfo.getProxyClient().getProcessCpuTime(), 1),
-                            getBlockedThread(info));
+                appendNumber(sb.append(' '), threadSampler.getTopId(i), 6);
+                appendText(sb.append(' '), name, -nameWidth);
+                appendText(sb.append("  "), threadSampler.getTopThreadState(i).name(), 13);
+                appendFixed(sb.append(' '), getThreadCPUUtilization(threadSampler.getTopDeltaCpuTime(i), vmInfo.getDeltaUptime()), 2, 5);
+                appendFixed(sb.append("%    "), getThreadCPUUtilization(threadSampler.getTopCpuTime(i), vmInfo.getProcessCpuTime(), 1), 2, 5);
+                appendBytes(sb.append("% "), threadSampler.getTopAllocationRate(i), 8).append(' ');
+                if (threadSampler.getTopLockOwnerId(i) >= 0) {
+                    appendNumber(sb, threadSampler.getTopLockOwnerId(i), 5);
+                } else {
+                    appendSpaces(sb, 5);
                 }
+                sb.append(" \n");
             }
-            if (config.isDisplayedThreadLimit() && newThreadCPUMillis.size() >= config.getNumberOfDisplayedThreads()) {
-                System.out.printf(" Note: Only top %d threads (according cpu load) are shown!", config.getNumberOfDisplayedThreads());
+            if (replayer == null && config.getThreadOrder() != threadSampler.getOrder()) {
+                sb.append(" Note: The jvm does not report allocated bytes per thread, threads are sorted by cpu load!\n");
             }
-            previousThreadCPUMillis = newThreadCPUMillis;
+            if (config.isDisplayedThreadLimit() && threadSampler.getSampledThreadCount() >= config.getNumberOfDisplayedThreads()) {
+                sb.append(" Note: Only top ").append(config.getNumberOfDisplayedThreads())
+                        .append(threadSampler.getOrder() == ThreadSampler.Order.ALLOC?
+                                " threads (according allocation rate) are shown!\n" : " threads (according cpu load) are shown!\n");
+            }
+        } else if (vmInfo.isThreadCpuTimeSupported()) {
+            sb.append("\n -Threads were not recorded-\n");
         } else {
-            System.out.printf("%n -Thread CPU telemetries are not available on the monitored jvm/platform-%n");
-        }
-    }
-
-    private String getBlockedThread(ThreadInfo info) {
-        if (info.getLockOwnerId() >= 0) {
-            return "" + info.getLockOwnerId();
+            sb.append("\n -Thread CPU telemetries are not available on the monitored jvm/platform-\n");
         }
-        return "";
     }
 
     private double getThreadCPUUtilization(long deltaThreadCpuTime, long totalTime) {
@@ -0,0 +1,159 @@
+package com.jvmtop.view;
+
+import javax.management.ObjectName;
+
+import com.jvmtop.Config;
+import com.jvmtop.monitor.TopK;
+import com.jvmtop.monitor.VMInfo;
+import com.jvmtop.monitor.VMInfoState;
+import com.jvmtop.openjdk.tools.LocalVirtualMachine;
+import com.jvmtop.profiler.HeapHistogram;
+
+import static com.jvmtop.view.TextFormat.*;
+
+/**
+ * "heap" view, taking class histograms of the live objects of a specific jvm
+ * through the DiagnosticCommand MBean and printing the classes which grew most
+ * since the first histogram (the largest classes until there are two histograms).
+ *
+ * A histogram of the live objects requires a full GC in the target,
+ * so histograms are only taken every heap interval instead of every iteration.
+ */
+public class VMHeapView extends AbstractConsoleView {
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+    private static final int TOP_CLASSES = 20;
+    private static final int CLASS_WIDTH = 45;
+
+    private final VMInfo vmInfo;
+    private final ObjectName diagnosticCommand;
+    private final long intervalMillis;
+    private final HeapHistogram histogram = new HeapHistogram();
+    private final TopK topClasses = new TopK(TOP_CLASSES);
+    private long lastHistogramTime;
+    private long lastHistogramMillis;
+
+    public VMHeapView(Config p_config) throws Exception {
+        super(p_config);
+        LocalVirtualMachine localVirtualMachine = LocalVirtualMachine.getLocalVirtualMachine(p_config.getPid());
+        vmInfo = VMInfo.processNewVM(localVirtualMachine, p_config.getPid());
+        diagnosticCommand = new ObjectName(DIAGNOSTIC_COMMAND);
+        intervalMillis = p_config.getHeapIntervalMillis();
+    }
+
+    public void printView(Screen screen) throws Exception {
+        vmInfo.update();
+
+        if (vmInfo.getState() == VMInfoState.ATTACHED_UPDATE_ERROR) {
+            screen.println("ERROR: Could not fetch telemetries - Process terminated?");
+            exit();
+            return;
+        }
+        if (vmInfo.getState() != VMInfoState.ATTACHED) {
+            screen.println("ERROR: Could not attach to process.");
+            exit();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (histogram.getSampleCount() == 0 || now - lastHistogramTime >= intervalMillis) {
+            if (!takeHistogram(now)) {
+                screen.println("ERROR: Could not take a class histogram - DiagnosticCommand MBean not available?");
+                exit();
+                return;
+            }
+        }
+
+        StringBuilder sb = screen.buffer();
+        sb.append(" Heap histogram PID ").append(vmInfo.getId()).append(": ");
+        appendText(sb, vmInfo.getDisplayName(), -60).append('\n');
+        appendNumber(sb.append(' '), histogram.getSampleCount(), 0).append(" histograms, last ");
+        appendNumber(sb, (now - lastHistogramTime) / 1000, 0).append("s ago (took ");
+        appendNumber(sb, lastHistogramMillis, 0).append("ms), ");
+        appendBytes(sb, histogram.getTotalBytes(), 0).append(" in ");
+        appendNumber(sb, histogram.getTotalInstances(), 0).append(" live objects, ");
+        appendNumber(sb, histogram.getClassCount(), 0).append(" classes\n\n");
+
+        appendText(sb, " CLASS", -CLASS_WIDTH - 1);
+        sb.append("  INSTANCES   BYTES   GROWTH   RATE/S     LAST\n");
+        boolean growth = histogram.getSampleCount() > 1;
+        topClasses.reset(TOP_CLASSES);
+        for (int id = 0; id < histogram.getClassCount(); id++) {
+            topClasses.offer(id, growth? histogram.getBytesSinceFirst(id) : histogram.getBytes(id));
+        }
+        topClasses.sort();
+        long millisSinceFirst = histogram.getMillisSinceFirst();
+        for (int i = 0; i < topClasses.size(); i++) {
+            int id = (int) topClasses.getId(i);
+            int start = sb.length();
+            appendClassName(sb.append(' '), histogram.getClassName(id));
+            if (sb.length() - start > CLASS_WIDTH + 1) {
+                // keep the rightmost part of long class names
+                sb.replace(start + 1, sb.length() - CLASS_WIDTH + 2, "..");
+            }
+            appendSpaces(sb, CLASS_WIDTH + 1 - (sb.length() - start));
+            appendNumber(sb, histogram.getInstances(id), 11);
+            appendBytes(sb, histogram.getBytes(id), 8);
+            if (growth) {
+                appendSignedBytes(sb, histogram.getBytesSinceFirst(id), 9);
+                long rate = millisSinceFirst > 0? histogram.getBytesSinceFirst(id) * 1000 / millisSinceFirst : 0;
+                appendSignedBytes(sb, rate, 9);
+                appendSignedBytes(sb, histogram.getBytesSincePrevious(id), 9);
+            }
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * Takes the histogram of the live objects and adds it to the table.
+     *
+     * @return false if the target does not support the diagnostic command
+     */
+    private boolean takeHistogram(long now) throws Exception {
+        long start = System.currentTimeMillis();
+        Object result = vmInfo.getProxyClient().invoke(diagnosticCommand, "gcClassHistogram",
+                new Object[] { new String[0] }, new String[] { String[].class.getName() });
+        if (!(result instanceof String)) {
+            return false;
+        }
+        lastHistogramMillis = System.currentTimeMillis() - start;
+        lastHistogramTime = now;
+        histogram.parse((String) result, now);
+        return true;
+    }
+
+    /**
+     * Appends a class name, converting the names of array classes like [B or [Ljava.lang.String;
+     * into the source form byte[] or java.lang.String[].
+     */
+    private static void appendClassName(StringBuilder sb, String name) {
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions == 0 || dimensions == name.length()) {
+            sb.append(name);
+            return;
+        }
+        char type = name.charAt(dimensions);
+        switch (type) {
+            case 'B': sb.append("byte"); break;
+            case 'C': sb.append("char"); break;
+            case 'D': sb.append("double"); break;
+            case 'F': sb.append("float"); break;
+            case 'I': sb.append("int"); break;
+            case 'J': sb.append("long"); break;
+            case 'S': sb.append("short"); break;
+            case 'Z': sb.append("boolean"); break;
+            case 'L':
+                int end = name.endsWith(";")? name.length() - 1 : name.length();
+                sb.append(name, dimensions + 1, end);
+                break;
+            default:
+                sb.append(name);
+                return;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            sb.append("[]");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.jvmtop.view;
+
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.List;
+
+import com.jvmtop.Config;
+import com.jvmtop.monitor.VMInfo;
+import com.jvmtop.monitor.VMInfoState;
+import com.jvmtop.openjdk.tools.LocalVirtualMachine;
+import com.jvmtop.openjdk.tools.MemoryPoolProxy;
+import com.jvmtop.openjdk.tools.MemoryPoolStat;
+
+import static com.jvmtop.view.TextFormat.*;
+
+/**
+ * "pools" view, printing the usage of each memory pool of a specific jvm.
+ *
+ * Besides the current usage, the occupancy after the last collection of the pool is shown
+ * (the live set, for pools not collected by a GC the current usage) with its growth rate
+ * since the first sample, and the growth rate of the current usage since the previous sample.
+ */
+public class VMMemoryPoolView extends AbstractConsoleView {
+    private final VMInfo vmInfo;
+    private long[] previousUsed = new long[0];
+    private long[] firstLive = new long[0];
+    private long[] firstLiveTime = new long[0];
+    private long previousTime;
+
+    public VMMemoryPoolView(Config p_config) throws Exception {
+        super(p_config);
+        LocalVirtualMachine localVirtualMachine = LocalVirtualMachine.getLocalVirtualMachine(p_config.getPid());
+        vmInfo = VMInfo.processNewVM(localVirtualMachine, p_config.getPid());
+    }
+
+    public void printView(Screen screen) throws Exception {
+        vmInfo.update();
+
+        if (vmInfo.getState() == VMInfoState.ATTACHED_UPDATE_ERROR) {
+            screen.println("ERROR: Could not fetch telemetries - Process terminated?");
+            exit();
+            return;
+        }
+        if (vmInfo.getState() != VMInfoState.ATTACHED) {
+            screen.println("ERROR: Could not attach to process.");
+            exit();
+            return;
+        }
+
+        List<MemoryPoolProxy> pools = vmInfo.getProxyClient().getMemoryPoolProxies();
+        if (previousUsed.length < pools.size()) {
+            previousUsed = new long[pools.size()];
+            firstLive = new long[pools.size()];
+            firstLiveTime = new long[pools.size()];
+            Arrays.fill(firstLiveTime, -1);
+        }
+        long now = System.currentTimeMillis();
+        long elapsed = previousTime > 0? now - previousTime : 0;
+
+        StringBuilder sb = screen.buffer();
+        sb.append(" Memory pools PID ").append(vmInfo.getId()).append(": ");
+        appendText(sb, vmInfo.getDisplayName(), -60).append('\n');
+        appendBytes(sb.append(" HEAP "), vmInfo.getHeapUsed(), 0).append(" / ");
+        appendBytes(sb, vmInfo.getHeapMax(), 0).append("  NONHEAP ");
+        appendBytes(sb, vmInfo.getNonHeapUsed(), 0).append("  GC ");
+        appendNumber(sb, vmInfo.getGcCount(), 0).append(" collections, ");
+        appendPercent(sb, vmInfo.getGcLoad(), 0).append(" load\n\n");
+
+        sb.append(" POOL                        USED  COMMIT     MAX    USE%    LIVE   LIVE%   USED/S   LIVE/S  LAST GC\n");
+        for (int i = 0; i < pools.size(); i++) {
+            MemoryPoolProxy pool = pools.get(i);
+            MemoryPoolStat stat = pool.getStat();
+            MemoryUsage usage = stat.getUsage();
+            if (usage == null) {
+                continue;
+            }
+            long max = usage.getMax() >= 0? usage.getMax() : usage.getCommitted();
+            MemoryUsage afterGc = stat.getAfterGcUsage();
+            long live = pool.isCollected()? (stat.getLastGcId() > 0 && afterGc != null? afterGc.getUsed() : -1) : usage.getUsed();
+
+            appendText(sb.append(' '), stat.getPoolName(), -24);
+            appendBytes(sb, usage.getUsed(), 8);
+            appendBytes(sb, usage.getCommitted(), 8);
+            appendBytes(sb, usage.getMax(), 8);
+            appendRatio(sb, usage.getUsed(), max);
+            appendBytes(sb, live, 8);
+            appendRatio(sb, live, max);
+
+            if (elapsed > 0) {
+                appendSignedBytes(sb, (usage.getUsed() - previousUsed[i]) * 1000 / elapsed, 9);
+            } else {
+                appendText(sb, "n/a", 9);
+            }
+            previousUsed[i] = usage.getUsed();
+
+            if (live >= 0 && firstLiveTime[i] < 0) {
+                firstLive[i] = live;
+                firstLiveTime[i] = now;
+            }
+            if (live >= 0 && now > firstLiveTime[i]) {
+                appendSignedBytes(sb, (live - firstLive[i]) * 1000 / (now - firstLiveTime[i]), 9);
+            } else {
+                appendText(sb, "n/a", 9);
+            }
+
+            MemoryUsage beforeGc = stat.getBeforeGcUsage();
+            if (stat.getLastGcId() > 0 && beforeGc != null && afterGc != null) {
+                sb.append("  #").append(stat.getLastGcId()).append(' ');
+                appendBytes(sb, beforeGc.getUsed(), 0).append("->");
+                appendBytes(sb, afterGc.getUsed(), 0);
+            }
+            sb.append('\n');
+        }
+        previousTime = now;
+    }
+
+    private static void appendRatio(StringBuilder sb, long value, long max) {
+        if (value < 0 || max <= 0) {
+            appendText(sb, "n/a", 7).append(' ');
+        } else {
+            appendPercent(sb, (double) value / max, 7);
+        }
+    }
+}
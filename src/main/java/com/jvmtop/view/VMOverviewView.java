@@ -21,99 +21,194 @@
 package com.jvmtop.view;
 
 import com.jvmtop.Config;
+import com.jvmtop.monitor.MetricHistory;
+import com.jvmtop.monitor.RemoteEndpoint;
+import com.jvmtop.monitor.TopK;
 import com.jvmtop.monitor.VMInfo;
-import com.jvmtop.openjdk.tools.LocalVirtualMachine;
+import com.jvmtop.monitor.VMScanner;
 
-import java.util.*;
-import java.util.Map.Entry;
+import java.util.List;
+
+import static com.jvmtop.view.TextFormat.*;
 
 /**
  * "overview" view, providing the most-important metrics of all accessible jvms in a top-like manner.
+ * Remote jvms listed in the fleet file are shown along with the local ones.
  */
 public class VMOverviewView extends AbstractConsoleView {
-    private List<VMInfo> vmInfoList = new ArrayList<>();
-    private Map<Integer, LocalVirtualMachine> vmMap = new HashMap<>();
+    private static final String HEADER = String.format("%5s %-15.15s %5s %5s %5s %5s %6s %6s %5s %5s %8s %4s %2s",
+            "PID", "MAIN-CLASS", "HPCUR", "HPMAX", "NHCUR", "NHMAX", "CPU", "GC", "ALLOC",
+            "VM", "USERNAME", "#T", "DL");
+
+    private final VMScanner scanner;
+    private final TopK topVMs = new TopK(64);
+    private final int historySize;
+    private final int vmLimit;
+    private final String header;
 
-    public VMOverviewView(Config p_config) {
+    public VMOverviewView(Config p_config) throws Exception {
         super(p_config);
+        openRecording();
+        scanner = replayer != null? null : new VMScanner(p_config.getParallelism(),
+                p_config.getUpdateTimeoutMillis(), p_config.isAgentless(), p_config.getRescanIntervalMillis());
+        if (scanner != null && p_config.getFleetFile() != null) {
+            scanner.addRemoteVMs(RemoteEndpoint.readAll(p_config.getFleetFile()));
+        }
+        historySize = MetricHistory.getDefaultCapacity();
+        vmLimit = p_config.getVmLimit();
+        if (historySize > 0) {
+            header = HEADER + String.format(" %-" + historySize + "." + historySize + "s %6s %6s %6s%n", "CPU-HISTORY", "MIN", "AVG", "MAX");
+        } else {
+            header = HEADER + String.format("%n");
+        }
     }
 
-    public void printView() throws Exception
+    public void printView(Screen screen) throws Exception
     {
-        printHeader();
-        //to reduce cpu effort, scan only every 5 iterations for new vms
-        scanForNewVMs();
-        updateVMs(vmInfoList);
-        vmInfoList.sort(VMInfo.CPU_LOAD_COMPARATOR);
+        List<VMInfo> vmInfoList;
+        long timestamp;
+        if (replayer != null) {
+            if (!replayer.next()) {
+                exit();
+                return;
+            }
+            vmInfoList = replayer.getVMInfos();
+            timestamp = replayer.getTimestamp();
+        } else {
+            vmInfoList = scanner.update();
+            timestamp = System.currentTimeMillis();
+            if (recorder != null) {
+                recorder.beginTick(timestamp);
+                for (VMInfo vmInfo : vmInfoList) {
+                    recorder.record(vmInfo);
+                }
+                recorder.endTick();
+            }
+        }
+        if (stream != null) {
+            stream.write(timestamp, vmInfoList);
+            return;
+        }
+        if (replayer != null) {
+            printReplayTime(screen.buffer());
+        }
+        printHeader(screen);
+
+        // order by cpu load, the index into vmInfoList is used as id
+        // so that jvms with the same load keep their order
+        topVMs.reset(vmInfoList.size());
+        for (int i = 0; i < vmInfoList.size(); i++) {
+            topVMs.offer(i, Math.round(vmInfoList.get(i).getCpuLoad() * 1000000));
+        }
+        topVMs.sort();
 
-        for (VMInfo vmInfo : vmInfoList) {
+        // only the jvms which fit on the terminal are shown, one row is left for the note
+        int limit = vmLimit > 0? vmLimit : Integer.MAX_VALUE;
+        int rows = screen.getRemainingRows();
+        if (rows >= 0 && Math.min(limit, topVMs.size()) > rows) {
+            limit = Math.max(0, rows - 1);
+        }
+
+        // the rank decides how often the jvm is polled by the scanner
+        StringBuilder sb = screen.buffer();
+        for (int i = 0; i < topVMs.size(); i++) {
+            VMInfo vmInfo = vmInfoList.get((int) topVMs.getId(i));
+            boolean visible = i < limit;
+            vmInfo.getPollSchedule().setRank(i, visible);
+            if (!visible) {
+                continue;
+            }
             switch(vmInfo.getState()) {
                 case ATTACHED:
-                    printVM(vmInfo);
+                    printVM(sb, vmInfo);
                     break;
                 case ATTACHED_UPDATE_ERROR:
-                    System.out.printf("%5d %-25.15s [ERROR: Could not fetch telemetries (Process DEAD?)] %n",
-                            vmInfo.getId(), getEntryPointClass(vmInfo.getDisplayName()));
+                    printError(sb, vmInfo, "[ERROR: Could not fetch telemetries (Process DEAD?)]");
                     break;
                 case ERROR_DURING_ATTACH:
-                    System.out.printf("%5d %-25.15s [ERROR: Could not attach to VM] %n",
-                            vmInfo.getId(), getEntryPointClass(vmInfo.getDisplayName()));
+                    printError(sb, vmInfo, "[ERROR: Could not attach to VM]");
                     break;
                 case CONNECTION_REFUSED:
-                    System.out.printf("%5d %-25.15s [ERROR: Connection refused/access denied] %n",
-                            vmInfo.getId(), getEntryPointClass(vmInfo.getDisplayName()));
+                    printError(sb, vmInfo, "[ERROR: Connection refused/access denied]");
+                    break;
+                case INIT:
+                case DETACHED:
+                    // e.g. a remote jvm which is connected by the collector or waits for its next attempt
+                    long retryMillis = vmInfo.getNextRetry() - System.currentTimeMillis();
+                    printError(sb, vmInfo, retryMillis > 0?
+                            "[Disconnected, retrying in " + (retryMillis + 999) / 1000 + "s]" : "[Connecting...]");
                     break;
             }
         }
+        if (topVMs.size() > limit) {
+            sb.append(" Note: Only top ").append(limit).append(" of ").append(topVMs.size())
+                    .append(" jvms (according cpu load) are shown!\n");
+        }
     }
 
-    private String getEntryPointClass(String name) {
-        if (name.indexOf(' ') > 0) {
-            name = name.substring(0, name.indexOf(' '));
+    /**
+     * Appends the entry point class (the last 15 characters of the first word of the command line).
+     */
+    private void appendEntryPointClass(StringBuilder sb, String name, int width) {
+        int end = name.indexOf(' ');
+        if (end <= 0) {
+            end = name.length();
         }
-        return rightStr(name, 15);
+        appendText(sb, name, Math.max(0, end - 15), end, width);
     }
 
-    private void printVM(VMInfo vmInfo) throws Exception {
-        String deadlockState = "";
-        if (vmInfo.hasDeadlockThreads()) {
-            deadlockState = "!D";
-        }
-        System.out.printf("%5d %-15.15s %5s %5s %5s %5s %5.2f%% %5.2f%% %-5.5s %8.8s %4d %2.2s%n",
-                vmInfo.getId(), getEntryPointClass(vmInfo.getDisplayName()),
-                toMB(vmInfo.getHeapUsed()), toMB(vmInfo.getHeapMax()),
-                toMB(vmInfo.getNonHeapUsed()), toMB(vmInfo.getNonHeapMax()),
-                vmInfo.getCpuLoad() * 100, vmInfo.getGcLoad() * 100,
-                vmInfo.getVMVersion(), vmInfo.getOSUser(), vmInfo.getThreadCount(),
-                deadlockState);
+    private void printError(StringBuilder sb, VMInfo vmInfo, String message) {
+        appendNumber(sb, vmInfo.getId(), 5).append(' ');
+        appendEntryPointClass(sb, vmInfo.getDisplayName(), -25);
+        sb.append(' ').append(message).append(" \n");
     }
 
-    private void updateVMs(List<VMInfo> vmList) throws Exception {
-        for (VMInfo vmInfo : vmList) {
-            vmInfo.update();
+    private void printVM(StringBuilder sb, VMInfo vmInfo) throws Exception {
+        appendNumber(sb, vmInfo.getId(), 5).append(' ');
+        appendEntryPointClass(sb, vmInfo.getDisplayName(), -15);
+        appendBytes(sb.append(' '), vmInfo.getHeapUsed(), 5);
+        appendBytes(sb.append(' '), vmInfo.getHeapMax(), 5);
+        appendBytes(sb.append(' '), vmInfo.getNonHeapUsed(), 5);
+        appendBytes(sb.append(' '), vmInfo.getNonHeapMax(), 5);
+        appendPercent(sb.append(' '), vmInfo.getCpuLoad(), 5);
+        appendPercent(sb.append(' '), vmInfo.getGcLoad(), 5);
+        appendBytes(sb.append(' '), vmInfo.getAllocationRate(), 5);
+        appendText(sb.append(' '), vmInfo.getVMVersion(), -5);
+        appendText(sb.append(' '), vmInfo.getOSUser(), 8);
+        appendNumber(sb.append(' '), vmInfo.getThreadCount(), 4);
+        appendText(sb.append(' '), vmInfo.hasDeadlockThreads()? "!D" : "", 2);
+        if (historySize > 0) {
+            MetricHistory history = vmInfo.getCpuLoadHistory();
+            appendSparkline(sb.append(' '), history, historySize, 0, history.max());
+            appendPercent(sb.append(' '), history.min(), 5);
+            appendPercent(sb.append(' '), history.average(), 5);
+            appendPercent(sb.append(' '), history.max(), 5);
         }
+        if (vmInfo.isStale()) {
+            sb.append(" [STALE]");
+        }
+        sb.append('\n');
     }
 
-    private void scanForNewVMs() {
-        Map<Integer, LocalVirtualMachine> machines = LocalVirtualMachine.getNewVirtualMachines(vmMap);
-        Set<Entry<Integer, LocalVirtualMachine>> set = machines.entrySet();
-
-        for (Entry<Integer, LocalVirtualMachine> entry : set) {
-            LocalVirtualMachine localvm = entry.getValue();
-            int vmid = localvm.vmid();
+    private void printHeader(Screen screen) {
+        screen.print(header);
+    }
 
-            if (!vmMap.containsKey(vmid)) {
-                VMInfo vmInfo = VMInfo.processNewVM(localvm, vmid);
-                vmInfoList.add(vmInfo);
-            }
+    @Override
+    public void sleep(long millis) throws Exception {
+        if (scanner != null) {
+            scanner.await(millis);
+        } else {
+            super.sleep(millis);
         }
-        vmMap = machines;
     }
 
-    private void printHeader() {
-        System.out.printf("%5s %-15.15s %5s %5s %5s %5s %6s %6s %5s %8s %4s %2s%n",
-                "PID", "MAIN-CLASS", "HPCUR", "HPMAX", "NHCUR", "NHMAX", "CPU", "GC",
-                "VM", "USERNAME", "#T", "DL");
+    @Override
+    public void last() throws Exception {
+        if (scanner != null) {
+            scanner.close();
+        }
+        super.last();
     }
 
 }
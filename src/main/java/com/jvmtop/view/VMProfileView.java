@@ -0,0 +1,195 @@
+package com.jvmtop.view;
+
+import com.jvmtop.Config;
+import com.jvmtop.monitor.TopK;
+import com.jvmtop.monitor.VMInfo;
+import com.jvmtop.monitor.VMInfoState;
+import com.jvmtop.openjdk.tools.LocalVirtualMachine;
+import com.jvmtop.profiler.CallTree;
+import com.jvmtop.profiler.StackSampler;
+import com.jvmtop.profiler.WaitTable;
+
+import static com.jvmtop.view.TextFormat.*;
+
+/**
+ * "profile" view, sampling the stacks of the threads of a specific jvm
+ * and printing the methods with the most self and total samples.
+ *
+ * In wall-clock mode the self methods are followed by the sites where blocked and waiting
+ * threads wait, with the lock and the thread owning it most often, and by the threads
+ * owning the locks others wait for.
+ */
+public class VMProfileView extends AbstractConsoleView {
+    private static final int TOP_METHODS = 12;
+    private static final int TOP_SITES = 8;
+    private static final int TOP_OWNERS = 5;
+    private static final int METHOD_WIDTH = 60;
+
+    private final VMInfo vmInfo;
+    private final StackSampler sampler;
+    private final TopK top = new TopK(TOP_METHODS);
+    private long[] selfByFrame = new long[0];
+    private long[] totalByFrame = new long[0];
+
+    public VMProfileView(Config p_config) throws Exception {
+        super(p_config);
+        LocalVirtualMachine localVirtualMachine = LocalVirtualMachine.getLocalVirtualMachine(p_config.getPid());
+        vmInfo = VMInfo.processNewVM(localVirtualMachine, p_config.getPid());
+        sampler = new StackSampler(vmInfo, p_config.getProfileMode(), p_config.getProfileIntervalMillis(),
+                p_config.getProfileBudget(), p_config.getProfileFilters());
+        if (vmInfo.getState() == VMInfoState.ATTACHED) {
+            sampler.start();
+        }
+    }
+
+    public void printView(Screen screen) throws Exception {
+        vmInfo.update();
+
+        if (vmInfo.getState() == VMInfoState.ATTACHED_UPDATE_ERROR) {
+            screen.println("ERROR: Could not fetch telemetries - Process terminated?");
+            exit();
+            return;
+        }
+        if (vmInfo.getState() != VMInfoState.ATTACHED) {
+            screen.println("ERROR: Could not attach to process.");
+            exit();
+            return;
+        }
+
+        StringBuilder sb = screen.buffer();
+        sb.append(" Profiling PID ").append(vmInfo.getId());
+        sb.append(sampler.getMode() == StackSampler.Mode.WALL? " (wall clock): " : " (cpu): ");
+        appendText(sb, vmInfo.getDisplayName(), -60).append('\n');
+        appendNumber(sb.append(" "), sampler.getSampleCount(), 0).append(" samples, interval ");
+        appendNumber(sb, sampler.getCurrentIntervalMillis(), 0).append("ms, overhead");
+        appendPercent(sb, sampler.getOverhead(), 6);
+        if (!sampler.isRunning()) {
+            sb.append(" [STOPPED]");
+        }
+        sb.append("\n\n");
+
+        CallTree callTree = sampler.getCallTree();
+        synchronized (callTree) {
+            int frameCount = callTree.getFrameCount();
+            if (selfByFrame.length < frameCount) {
+                selfByFrame = new long[frameCount * 2];
+                totalByFrame = new long[frameCount * 2];
+            }
+            callTree.sumSelf(selfByFrame);
+            callTree.sumTotal(totalByFrame);
+            long samples = callTree.getSampleCount();
+            if (sampler.getMode() == StackSampler.Mode.WALL) {
+                printTopMethods(sb, callTree, " SELF", selfByFrame, samples, TOP_SITES);
+                sb.append('\n');
+                printTopSites(sb, callTree, sampler.getWaitTable(), samples);
+                sb.append('\n');
+                printTopOwners(sb, sampler.getWaitTable(), samples);
+            } else {
+                printTopMethods(sb, callTree, " SELF", selfByFrame, samples, TOP_METHODS);
+                sb.append('\n');
+                printTopMethods(sb, callTree, " TOTAL", totalByFrame, samples, TOP_METHODS);
+            }
+        }
+    }
+
+    private void printTopMethods(StringBuilder sb, CallTree callTree, String title, long[] counts, long samples, int k) {
+        appendHeader(sb, title, "METHOD");
+        top.reset(k);
+        for (int frame = 0; frame < callTree.getFrameCount(); frame++) {
+            if (counts[frame] > 0) {
+                top.offer(frame, counts[frame]);
+            }
+        }
+        top.sort();
+        for (int i = 0; i < top.size(); i++) {
+            int frame = (int) top.getId(i);
+            appendSamples(sb, top.getScore(i), samples);
+            appendMethod(sb, callTree.getClassName(frame), callTree.getMethodName(frame));
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * Prints the sites with the most samples of blocked and waiting threads,
+     * each followed by the lock and its most frequent owner, if any.
+     */
+    private void printTopSites(StringBuilder sb, CallTree callTree, WaitTable waitTable, long samples) {
+        appendHeader(sb, " WAITING", "STATE          METHOD");
+        top.reset(TOP_SITES);
+        for (int site = 0; site < waitTable.getSiteCount(); site++) {
+            top.offer(site, waitTable.getSiteSamples(site));
+        }
+        top.sort();
+        for (int i = 0; i < top.size(); i++) {
+            int site = (int) top.getId(i);
+            long count = top.getScore(i);
+            appendSamples(sb, count, samples);
+            appendText(sb, waitTable.getSiteState(site).name(), -13).append("  ");
+            int frame = waitTable.getSiteFrame(site);
+            appendMethod(sb, callTree.getClassName(frame), callTree.getMethodName(frame));
+            sb.append('\n');
+            String lock = waitTable.getSiteLock(site);
+            if (lock != null) {
+                sb.append("                     on ").append(lock);
+                int owner = waitTable.getSiteTopOwner(site);
+                if (owner >= 0) {
+                    sb.append(", held by ");
+                    appendText(sb, waitTable.getOwnerName(owner), 0);
+                    appendPercent(sb.append(" ("), (double) waitTable.getSiteTopOwnerSamples(site) / count, 0).append(')');
+                }
+                sb.append('\n');
+            }
+        }
+    }
+
+    /**
+     * Prints the threads owning the locks other threads were waiting for in the most samples.
+     */
+    private void printTopOwners(StringBuilder sb, WaitTable waitTable, long samples) {
+        appendHeader(sb, " OWNER", "THREAD");
+        top.reset(TOP_OWNERS);
+        for (int owner = 0; owner < waitTable.getOwnerCount(); owner++) {
+            top.offer(owner, waitTable.getOwnerSamples(owner));
+        }
+        top.sort();
+        for (int i = 0; i < top.size(); i++) {
+            appendSamples(sb, top.getScore(i), samples);
+            appendText(sb, waitTable.getOwnerName((int) top.getId(i)), -METHOD_WIDTH);
+            sb.append('\n');
+        }
+    }
+
+    private static void appendHeader(StringBuilder sb, String title, String columns) {
+        appendText(sb, title, -8);
+        appendText(sb.append(' '), "SAMPLES", 9);
+        sb.append("  ").append(columns).append('\n');
+    }
+
+    private static void appendSamples(StringBuilder sb, long count, long samples) {
+        appendPercent(sb.append(' '), samples > 0? (double) count / samples : 0, 6);
+        appendNumber(sb.append(' '), count, 9).append("  ");
+    }
+
+    /**
+     * Appends class and method name, truncated at the left if they do not fit.
+     */
+    private static void appendMethod(StringBuilder sb, String className, String methodName) {
+        int length = className.length() + 1 + methodName.length() + 2;
+        if (length > METHOD_WIDTH) {
+            int skip = length - METHOD_WIDTH + 2;
+            sb.append("..");
+            if (skip < className.length()) {
+                sb.append(className, skip, className.length()).append('.');
+            }
+        } else {
+            sb.append(className).append('.');
+        }
+        sb.append(methodName).append("()");
+    }
+
+    @Override
+    public void last() throws Exception {
+        sampler.stop();
+        super.last();
+    }
+}
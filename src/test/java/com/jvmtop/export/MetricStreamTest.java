@@ -0,0 +1,56 @@
+package com.jvmtop.export;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MetricStreamTest {
+    private static final DateTimeFormatter FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    @Test
+    public void formatsEpoch() {
+        assertEquals("1970-01-01T00:00:00.000Z", timestamp(0));
+        assertEquals("1970-01-01T00:00:00.001Z", timestamp(1));
+        assertEquals("1969-12-31T23:59:59.999Z", timestamp(-1));
+    }
+
+    @Test
+    public void formatsCalendarEdges() {
+        assertTimestamp(LocalDateTime.of(2000, 2, 29, 12, 30, 45, 123000000));
+        assertTimestamp(LocalDateTime.of(2000, 3, 1, 0, 0));
+        assertTimestamp(LocalDateTime.of(1900, 2, 28, 23, 59, 59, 999000000));
+        assertTimestamp(LocalDateTime.of(1900, 3, 1, 0, 0));
+        assertTimestamp(LocalDateTime.of(2024, 2, 29, 8, 5, 9, 7000000));
+        assertTimestamp(LocalDateTime.of(2100, 3, 1, 0, 0));
+        assertTimestamp(LocalDateTime.of(2023, 12, 31, 23, 59, 59, 999000000));
+        assertTimestamp(LocalDateTime.of(2024, 1, 1, 0, 0));
+        assertTimestamp(LocalDateTime.of(9999, 12, 31, 23, 59, 59));
+    }
+
+    @Test
+    public void matchesJavaTime() {
+        Random random = new Random(42);
+        long min = LocalDateTime.of(1000, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        long max = LocalDateTime.of(9999, 12, 31, 23, 59).toInstant(ZoneOffset.UTC).toEpochMilli();
+        for (int i = 0; i < 100000; i++) {
+            long millis = min + (long) (random.nextDouble() * (max - min));
+            assertEquals(FORMAT.format(Instant.ofEpochMilli(millis)), timestamp(millis));
+        }
+    }
+
+    private static void assertTimestamp(LocalDateTime time) {
+        Instant instant = time.toInstant(ZoneOffset.UTC);
+        assertEquals(FORMAT.format(instant), timestamp(instant.toEpochMilli()));
+    }
+
+    private static String timestamp(long millis) {
+        return MetricStream.appendTimestamp(new StringBuilder(), millis).toString();
+    }
+}
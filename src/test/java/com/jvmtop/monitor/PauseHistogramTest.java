@@ -0,0 +1,87 @@
+package com.jvmtop.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PauseHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        PauseHistogram histogram = new PauseHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(-1, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void countsSmallValuesExactly() {
+        PauseHistogram histogram = new PauseHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.add(i);
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(55, histogram.getTotal());
+        assertEquals(10, histogram.getMax());
+        assertEquals(5, histogram.getPercentile(0.5));
+        assertEquals(9, histogram.getPercentile(0.9));
+        assertEquals(10, histogram.getPercentile(0.99));
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void clearRemovesAllDurations() {
+        PauseHistogram histogram = new PauseHistogram();
+        histogram.add(5);
+        histogram.add(1000);
+        histogram.clear();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getMax());
+        assertEquals(-1, histogram.getPercentile(0.5));
+        histogram.add(7);
+        assertEquals(7, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void clampsNegativeDurations() {
+        PauseHistogram histogram = new PauseHistogram();
+        histogram.add(-5);
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void reportsUpperBoundOfBucket() {
+        PauseHistogram histogram = new PauseHistogram();
+        // 32 and 33 share a bucket of width 2, 100 is in [100, 103]
+        histogram.add(32);
+        histogram.add(100);
+        histogram.add(1000);
+        assertEquals(33, histogram.getPercentile(0.3));
+        assertEquals(103, histogram.getPercentile(0.6));
+        // the upper bound is capped at the max. value
+        assertEquals(1000, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void boundsRelativeError() {
+        for (long value = 16; value < 1L << 40; value = value * 3 / 2 + 1) {
+            PauseHistogram histogram = new PauseHistogram();
+            histogram.add(value);
+            histogram.add(Long.MAX_VALUE / 2);
+            long reported = histogram.getPercentile(0.5);
+            assertTrue(value + " reported as " + reported, reported >= value);
+            assertTrue(value + " reported as " + reported, reported - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void handlesLargestValue() {
+        PauseHistogram histogram = new PauseHistogram();
+        histogram.add(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(0.5));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+}
@@ -0,0 +1,118 @@
+package com.jvmtop.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PollScheduleTest {
+    private static final long MAX_INTERVAL = 1000;
+
+    private PollSchedule schedule;
+    private long now;
+
+    @Before
+    public void setUp() {
+        PollSchedule.setDefaultMaxInterval(MAX_INTERVAL);
+        schedule = new PollSchedule();
+    }
+
+    @After
+    public void tearDown() {
+        PollSchedule.setDefaultMaxInterval(30000);
+    }
+
+    @Test
+    public void unrankedJvmsAreAlwaysDue() {
+        pollUnchanged(100);
+        pollUnchanged(100);
+        pollUnchanged(100);
+        assertEquals(0, schedule.getInterval());
+        assertTrue(schedule.isDue(now));
+    }
+
+    @Test
+    public void doublesTheIntervalWhileUnchanged() {
+        schedule.setRank(5, true);
+        pollUnchanged(0);
+        assertEquals(0, schedule.getInterval());
+        pollUnchanged(100);
+        assertEquals(100, schedule.getInterval());
+        pollUnchanged(100);
+        assertEquals(200, schedule.getInterval());
+        pollUnchanged(200);
+        assertEquals(400, schedule.getInterval());
+        assertFalse(schedule.isDue(now + 399));
+        assertTrue(schedule.isDue(now + 400));
+    }
+
+    @Test
+    public void capsTheIntervalAtTheMaxInterval() {
+        schedule.setRank(5, true);
+        backOff();
+        assertEquals(MAX_INTERVAL, schedule.getInterval());
+    }
+
+    @Test
+    public void hiddenJvmsBackOffFourTimesLonger() {
+        schedule.setRank(50, false);
+        backOff();
+        assertEquals(4 * MAX_INTERVAL, schedule.getInterval());
+    }
+
+    @Test
+    public void changeResetsVisibleJvms() {
+        schedule.setRank(5, true);
+        backOff();
+        poll(true, false);
+        assertEquals(0, schedule.getInterval());
+        assertTrue(schedule.isDue(now));
+    }
+
+    @Test
+    public void changeSpeedsUpHiddenJvmsGradually() {
+        schedule.setRank(50, false);
+        backOff();
+        poll(true, false);
+        assertEquals(2 * MAX_INTERVAL, schedule.getInterval());
+        poll(false, true);
+        assertEquals(0, schedule.getInterval());
+    }
+
+    @Test
+    public void becomingVisibleCapsTheInterval() {
+        schedule.setRank(50, false);
+        backOff();
+        assertEquals(4 * MAX_INTERVAL, schedule.getInterval());
+        schedule.setRank(5, true);
+        assertEquals(MAX_INTERVAL, schedule.getInterval());
+    }
+
+    @Test
+    public void firstRanksAreAlwaysDue() {
+        schedule.setRank(5, true);
+        backOff();
+        assertFalse(schedule.isDue(now + 1));
+        schedule.setRank(0, true);
+        assertTrue(schedule.isDue(now + 1));
+    }
+
+    private void backOff() {
+        for (int i = 0; i < 10; i++) {
+            pollUnchanged(schedule.getInterval() > 0? schedule.getInterval() : 100);
+        }
+    }
+
+    private void pollUnchanged(long elapsed) {
+        now += elapsed;
+        schedule.polled(false, false, now);
+    }
+
+    private void poll(boolean changed, boolean spiking) {
+        now += schedule.getInterval();
+        schedule.polled(changed, spiking, now);
+    }
+}
@@ -0,0 +1,194 @@
+package com.jvmtop.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jvmtop.openjdk.tools.ProxyClient;
+
+public class RecorderTest {
+    private Path file;
+    private VMInfo vmInfo;
+    private int pid;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("jvmtop", ".rec");
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        pid = Integer.parseInt(name.substring(0, name.indexOf('@')));
+        // monitors the jvm running the test
+        vmInfo = VMInfo.processNewVM(ProxyClient.getProxyClient("localhost", 0, null, null), pid);
+        assertEquals(VMInfoState.ATTACHED, vmInfo.getState());
+        vmInfo.update();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        vmInfo.release();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void replaysRecordedTicks() throws Exception {
+        ThreadSampler threadSampler = new ThreadSampler(vmInfo);
+        threadSampler.sample(5);
+        Recorder recorder = Recorder.open(file);
+        recorder.beginTick(1000);
+        recorder.record(vmInfo);
+        recorder.recordThreads(vmInfo, threadSampler);
+        recorder.beginTick(3000);
+        recorder.record(vmInfo);
+        recorder.close();
+
+        try (Replayer replayer = Replayer.open(file)) {
+            assertTrue(replayer.next());
+            assertEquals(1000, replayer.getTimestamp());
+            assertEquals(2000, replayer.getDelayToNextTick());
+            VMInfo replayed = replayer.getVMInfo(pid);
+            assertNotNull(replayed);
+            assertEquals(VMInfoState.ATTACHED, replayed.getState());
+            assertEquals(vmInfo.getDisplayName(), replayed.getDisplayName());
+            assertEquals(vmInfo.getVMVersion(), replayed.getVMVersion());
+            assertEquals(vmInfo.getOSUser(), replayed.getOSUser());
+            assertEquals(vmInfo.getInputArguments(), replayed.getInputArguments());
+            assertEquals(vmInfo.getSystemProperties(), replayed.getSystemProperties());
+            assertEquals(vmInfo.getHeapUsed(), replayed.getHeapUsed());
+            assertEquals(vmInfo.getHeapMax(), replayed.getHeapMax());
+            assertEquals(vmInfo.getNonHeapUsed(), replayed.getNonHeapUsed());
+            assertEquals(vmInfo.getCpuLoad(), replayed.getCpuLoad(), 0);
+            assertEquals(vmInfo.getGcCount(), replayed.getGcCount());
+            assertEquals(vmInfo.getThreadCount(), replayed.getThreadCount());
+            assertEquals(vmInfo.getAllocationRate(), replayed.getAllocationRate());
+
+            ThreadSampler replayedThreads = replayer.getThreadSampler(pid);
+            assertNotNull(replayedThreads);
+            assertEquals(threadSampler.getTopCount(), replayedThreads.getTopCount());
+            for (int i = 0; i < threadSampler.getTopCount(); i++) {
+                assertEquals(threadSampler.getTopId(i), replayedThreads.getTopId(i));
+                assertEquals(threadSampler.getTopThreadName(i), replayedThreads.getTopThreadName(i));
+            }
+
+            assertTrue(replayer.next());
+            assertEquals(3000, replayer.getTimestamp());
+            assertEquals(-1, replayer.getDelayToNextTick());
+            assertNotNull(replayer.getVMInfo(pid));
+            assertNull(replayer.getThreadSampler(pid));
+            assertFalse(replayer.next());
+        }
+    }
+
+    @Test
+    public void appendsToExistingRecording() throws Exception {
+        Recorder recorder = Recorder.open(file);
+        recorder.beginTick(1000);
+        recorder.record(vmInfo);
+        recorder.close();
+        recorder = Recorder.open(file);
+        recorder.beginTick(2000);
+        recorder.record(vmInfo);
+        recorder.close();
+
+        try (Replayer replayer = Replayer.open(file)) {
+            assertTrue(replayer.next());
+            assertEquals(1000, replayer.getTimestamp());
+            assertTrue(replayer.next());
+            assertEquals(2000, replayer.getTimestamp());
+            // the constants are written again by the new recorder
+            assertEquals(vmInfo.getDisplayName(), replayer.getVMInfo(pid).getDisplayName());
+            assertFalse(replayer.next());
+        }
+    }
+
+    @Test
+    public void stopsAtRecordCutOff() throws Exception {
+        Recorder recorder = Recorder.open(file);
+        recorder.beginTick(1000);
+        recorder.record(vmInfo);
+        recorder.beginTick(2000);
+        recorder.record(vmInfo);
+        recorder.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (Replayer replayer = Replayer.open(file)) {
+            assertTrue(replayer.next());
+            assertNotNull(replayer.getVMInfo(pid));
+            // the second tick is complete up to its cut off sample
+            assertTrue(replayer.next());
+            assertEquals(2000, replayer.getTimestamp());
+            assertNull(replayer.getVMInfo(pid));
+            assertFalse(replayer.next());
+        }
+    }
+
+    @Test
+    public void followsOnlyCompleteTicks() throws Exception {
+        Recorder recorder = Recorder.open(file);
+        try {
+            recorder.beginTick(1000);
+            recorder.record(vmInfo);
+            recorder.endTick();
+            recorder.beginTick(2000);
+            recorder.record(vmInfo);
+
+            try (Replayer replayer = Replayer.open(file)) {
+                assertTrue(replayer.next());
+                assertEquals(1000, replayer.getTimestamp());
+                assertNotNull(replayer.getVMInfo(pid));
+                // the second tick is still being written
+                assertEquals(-1, replayer.getDelayToNextTick());
+                assertFalse(replayer.next());
+
+                recorder.endTick();
+                assertTrue(replayer.next());
+                assertEquals(2000, replayer.getTimestamp());
+                assertNotNull(replayer.getVMInfo(pid));
+            }
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void keepsTicksAcrossMappedWindows() throws Exception {
+        Recorder recorder = Recorder.open(file);
+        int samples = 0;
+        recorder.beginTick(1000);
+        while (Files.size(file) <= Recorder.CHUNK_SIZE + Recorder.HEADER_SIZE) {
+            recorder.record(vmInfo);
+            samples++;
+        }
+        recorder.beginTick(2000);
+        recorder.record(vmInfo);
+        recorder.close();
+
+        try (Replayer replayer = Replayer.open(file)) {
+            assertTrue(replayer.next());
+            assertEquals(1000, replayer.getTimestamp());
+            assertEquals(samples, replayer.getVMInfos().size());
+            assertTrue(replayer.next());
+            assertEquals(2000, replayer.getTimestamp());
+            assertFalse(replayer.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        Files.write(file, "not a recording".getBytes("US-ASCII"));
+        Replayer.open(file).close();
+    }
+}
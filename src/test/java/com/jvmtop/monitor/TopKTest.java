@@ -0,0 +1,113 @@
+package com.jvmtop.monitor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TopKTest {
+
+    @Test
+    public void sortsByDescendingScore() {
+        TopK top = new TopK(4);
+        top.reset(4);
+        top.offer(1, 30);
+        top.offer(2, 10);
+        top.offer(3, 40);
+        top.offer(4, 20);
+        top.sort();
+        assertEquals(4, top.size());
+        assertIds(top, 3, 1, 4, 2);
+        assertEquals(40, top.getScore(0));
+        assertEquals(10, top.getScore(3));
+    }
+
+    @Test
+    public void keepsFewerEntriesThanTheBound() {
+        TopK top = new TopK(8);
+        top.reset(8);
+        top.offer(1, 5);
+        top.offer(2, 7);
+        top.sort();
+        assertEquals(2, top.size());
+        assertIds(top, 2, 1);
+    }
+
+    @Test
+    public void evictsTheLowestEntryAtTheBound() {
+        TopK top = new TopK(3);
+        top.reset(3);
+        for (int id = 0; id < 100; id++) {
+            // scores are not offered in order
+            top.offer(id, (id * 37) % 100);
+        }
+        top.sort();
+        assertEquals(3, top.size());
+        assertEquals(99, top.getScore(0));
+        assertEquals(98, top.getScore(1));
+        assertEquals(97, top.getScore(2));
+    }
+
+    @Test
+    public void ignoresEntriesBelowTheBound() {
+        TopK top = new TopK(2);
+        top.reset(2);
+        top.offer(1, 50);
+        top.offer(2, 60);
+        top.offer(3, 10);
+        top.offer(4, 50);
+        top.sort();
+        assertIds(top, 2, 1);
+    }
+
+    @Test
+    public void ranksTiesByAscendingId() {
+        TopK top = new TopK(3);
+        top.reset(3);
+        top.offer(9, 5);
+        top.offer(4, 5);
+        top.offer(7, 5);
+        top.offer(2, 5);
+        top.offer(8, 5);
+        top.sort();
+        assertIds(top, 2, 4, 7);
+    }
+
+    @Test
+    public void growsOnReset() {
+        TopK top = new TopK(1);
+        top.reset(5);
+        for (int id = 1; id <= 5; id++) {
+            top.offer(id, id);
+        }
+        top.sort();
+        assertIds(top, 5, 4, 3, 2, 1);
+    }
+
+    @Test
+    public void resetRemovesAllEntries() {
+        TopK top = new TopK(2);
+        top.reset(2);
+        top.offer(1, 1);
+        top.offer(2, 2);
+        top.reset(2);
+        top.offer(3, 3);
+        top.sort();
+        assertIds(top, 3);
+    }
+
+    @Test
+    public void keepsNothingWithZeroBound() {
+        TopK top = new TopK(4);
+        top.reset(0);
+        top.offer(1, 100);
+        top.sort();
+        assertEquals(0, top.size());
+    }
+
+    private static void assertIds(TopK top, long... ids) {
+        assertEquals(ids.length, top.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], top.getId(i));
+        }
+    }
+}
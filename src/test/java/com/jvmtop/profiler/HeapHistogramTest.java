@@ -0,0 +1,100 @@
+package com.jvmtop.profiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class HeapHistogramTest {
+    private static final String FIRST =
+            "\n"
+            + " num     #instances         #bytes  class name\n"
+            + "----------------------------------------------\n"
+            + "   1:          5230         462328  [C\n"
+            + "   2:          1234          29616  java.lang.String\n"
+            + "   3:            10            640  com.example.Cache$Entry\n"
+            + "Total          6474         492584\n";
+
+    private static final String SECOND =
+            " num     #instances         #bytes  class name (module)\n"
+            + "-------------------------------------------------------\n"
+            + "   1:          6000         500000  [C\r\n"
+            + "   2:          1500          36000  java.lang.String (java.base@11.0.2)\n"
+            + "   3:             4            256  com.example.Cache$Entry\n"
+            + "   4:             6            384  com.example.Cache$Entry\n"
+            + "   5:             1             16  java.lang.Object\n"
+            + "Total          7511         536656\n";
+
+    @Test
+    public void parsesRows() {
+        HeapHistogram histogram = new HeapHistogram();
+        assertEquals(3, histogram.parse(FIRST, 1000));
+        assertEquals(3, histogram.getClassCount());
+        int chars = find(histogram, "[C");
+        assertEquals(5230, histogram.getInstances(chars));
+        assertEquals(462328, histogram.getBytes(chars));
+        assertEquals(1234, histogram.getInstances(find(histogram, "java.lang.String")));
+        assertEquals(6474, histogram.getTotalInstances());
+        assertEquals(492584, histogram.getTotalBytes());
+        // the first histogram is its own baseline
+        assertEquals(0, histogram.getInstancesSincePrevious(chars));
+        assertEquals(0, histogram.getBytesSinceFirst(chars));
+        assertEquals(0, histogram.getMillisSinceFirst());
+    }
+
+    @Test
+    public void computesGrowth() {
+        HeapHistogram histogram = new HeapHistogram();
+        histogram.parse(FIRST, 1000);
+        assertEquals(5, histogram.parse(SECOND, 3000));
+        assertEquals(2, histogram.getSampleCount());
+        // the module suffix and carriage returns are not part of the class name
+        assertEquals(4, histogram.getClassCount());
+
+        int chars = find(histogram, "[C");
+        assertEquals(770, histogram.getInstancesSincePrevious(chars));
+        assertEquals(37672, histogram.getBytesSincePrevious(chars));
+        int strings = find(histogram, "java.lang.String");
+        assertEquals(266, histogram.getInstancesSinceFirst(strings));
+        // rows of a class loaded by several class loaders are summed up
+        int entries = find(histogram, "com.example.Cache$Entry");
+        assertEquals(10, histogram.getInstances(entries));
+        assertEquals(0, histogram.getBytesSincePrevious(entries));
+        // classes seen for the first time grow from 0
+        assertEquals(1, histogram.getInstancesSinceFirst(find(histogram, "java.lang.Object")));
+        assertEquals(7511, histogram.getTotalInstances());
+        assertEquals(2000, histogram.getMillisSincePrevious());
+
+        histogram.parse(FIRST, 4000);
+        assertEquals(-1, histogram.getInstancesSincePrevious(find(histogram, "java.lang.Object")));
+        assertEquals(0, histogram.getInstancesSinceFirst(chars));
+        assertEquals(3000, histogram.getMillisSinceFirst());
+        assertEquals(1000, histogram.getMillisSincePrevious());
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append(i + 1).append(": ").append(i).append(' ').append(i * 16L).append(" C").append(i).append('\n');
+        }
+        HeapHistogram histogram = new HeapHistogram();
+        assertEquals(5000, histogram.parse(text, 0));
+        assertEquals(5000, histogram.getClassCount());
+        for (int i = 0; i < 5000; i += 499) {
+            int id = find(histogram, "C" + i);
+            assertEquals(i, histogram.getInstances(id));
+            assertEquals(i * 16L, histogram.getBytes(id));
+        }
+    }
+
+    private static int find(HeapHistogram histogram, String className) {
+        for (int id = 0; id < histogram.getClassCount(); id++) {
+            if (histogram.getClassName(id).equals(className)) {
+                return id;
+            }
+        }
+        fail(className + " not found");
+        return -1;
+    }
+}
@@ -0,0 +1,138 @@
+package com.jvmtop.view;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TextFormatTest {
+    private static final long K = 1024;
+    private static final long M = 1024 * K;
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Test
+    public void alignsNumbers() {
+        assertEquals("    0", TextFormat.appendNumber(new StringBuilder(), 0, 5).toString());
+        assertEquals("  -42", TextFormat.appendNumber(new StringBuilder(), -42, 5).toString());
+        assertEquals("7    ", TextFormat.appendNumber(new StringBuilder(), 7, -5).toString());
+        assertEquals("123", TextFormat.appendNumber(new StringBuilder(), 123, 0).toString());
+        // numbers are never truncated
+        assertEquals("9223372036854775807", TextFormat.appendNumber(new StringBuilder(), Long.MAX_VALUE, 5).toString());
+        assertEquals("-9223372036854775808", TextFormat.appendNumber(new StringBuilder(), Long.MIN_VALUE, 5).toString());
+    }
+
+    @Test
+    public void appendsToExistingText() {
+        StringBuilder sb = new StringBuilder("PID:");
+        TextFormat.appendNumber(sb, 42, 4);
+        assertEquals("PID:  42", sb.toString());
+    }
+
+    @Test
+    public void formatsFixedDecimals() {
+        assertEquals("0.00", fixed(0, 2));
+        assertEquals("0.05", fixed(0.05, 2));
+        assertEquals("1.5", fixed(1.5, 1));
+        assertEquals("-1.5", fixed(-1.5, 1));
+        assertEquals("1000000000000.00", fixed(1e12, 2));
+        assertEquals(" 3.14", TextFormat.appendFixed(new StringBuilder(), Math.PI, 2, 5).toString());
+    }
+
+    @Test
+    public void roundsFixedDecimals() {
+        assertEquals("0.13", fixed(0.125, 2));
+        assertEquals("1", fixed(0.5, 0));
+        assertEquals("0", fixed(0.49, 0));
+        // the carry reaches the integer part
+        assertEquals("10.00", fixed(9.9996, 2));
+        assertEquals("1.00", fixed(0.999, 2));
+        // values which round to zero lose their sign
+        assertEquals("0.00", fixed(-0.001, 2));
+    }
+
+    @Test
+    public void showsInvalidDecimalsAsNotAvailable() {
+        assertEquals("n/a", fixed(Double.NaN, 2));
+        assertEquals("n/a", fixed(Double.POSITIVE_INFINITY, 2));
+        assertEquals("  n/a", TextFormat.appendFixed(new StringBuilder(), Double.NEGATIVE_INFINITY, 2, 5).toString());
+    }
+
+    @Test
+    public void formatsPercentages() {
+        assertEquals(" 0.00%", TextFormat.appendPercent(new StringBuilder(), 0, 5).toString());
+        assertEquals("50.00%", TextFormat.appendPercent(new StringBuilder(), 0.5, 5).toString());
+        assertEquals("100.00%", TextFormat.appendPercent(new StringBuilder(), 1, 5).toString());
+        assertEquals("-2.50%", TextFormat.appendPercent(new StringBuilder(), -0.025, 5).toString());
+        assertEquals("0.01%", TextFormat.appendPercent(new StringBuilder(), 0.00005, 0).toString());
+        assertEquals("n/a%", TextFormat.appendPercent(new StringBuilder(), Double.NaN, 0).toString());
+    }
+
+    @Test
+    public void scalesBytes() {
+        assertEquals("0k", bytes(0));
+        assertEquals("0k", bytes(K - 1));
+        assertEquals("1k", bytes(K));
+        assertEquals("1023k", bytes(M - 1));
+        assertEquals("1m", bytes(M));
+        assertEquals("9999m", bytes(9999 * M));
+        assertEquals("9g", bytes(10000 * M));
+        assertEquals("1453m", bytes(1453 * M));
+        assertEquals("8388607t", bytes(Long.MAX_VALUE));
+        assertEquals(" 512k", TextFormat.appendBytes(new StringBuilder(), 512 * K, 5).toString());
+    }
+
+    @Test
+    public void showsNegativeBytesAsNotAvailable() {
+        assertEquals("n/a", bytes(-1));
+        assertEquals("n/a", bytes(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void signsByteDifferences() {
+        assertEquals("+0k", TextFormat.appendSignedBytes(new StringBuilder(), 0, 0).toString());
+        assertEquals("+512k", TextFormat.appendSignedBytes(new StringBuilder(), 512 * K, 0).toString());
+        assertEquals("-12m", TextFormat.appendSignedBytes(new StringBuilder(), -12 * M, 0).toString());
+        assertEquals("  -2k", TextFormat.appendSignedBytes(new StringBuilder(), -2 * K, 5).toString());
+    }
+
+    @Test
+    public void formatsDurations() {
+        assertEquals("00:00m", duration(0));
+        assertEquals("00:00m", duration(MINUTE - 1));
+        assertEquals("00:01m", duration(MINUTE));
+        assertEquals("31:13m", duration(31 * HOUR + 13 * MINUTE));
+        assertEquals("99:59m", duration(99 * HOUR + 59 * MINUTE));
+        // from 100 hours on as days and hours
+        assertEquals("4d 04h", duration(100 * HOUR));
+        assertEquals("106751991167d 07h", duration(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void clampsNegativeDurations() {
+        assertEquals("00:00m", duration(-5000));
+        assertEquals("00:00m", duration(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void truncatesAndAlignsText() {
+        assertEquals("abc", TextFormat.appendText(new StringBuilder(), "abcdef", 3).toString());
+        assertEquals("ab   ", TextFormat.appendText(new StringBuilder(), "ab", -5).toString());
+        assertEquals("   ab", TextFormat.appendText(new StringBuilder(), "ab", 5).toString());
+        assertEquals("abcdef", TextFormat.appendText(new StringBuilder(), "abcdef", 0).toString());
+        assertEquals("n/a", TextFormat.appendText(new StringBuilder(), null, 0).toString());
+        assertEquals("def", TextFormat.appendTail(new StringBuilder(), "abcdef", 3).toString());
+        assertEquals("ab ", TextFormat.appendTail(new StringBuilder(), "ab", -3).toString());
+    }
+
+    private static String fixed(double value, int decimals) {
+        return TextFormat.appendFixed(new StringBuilder(), value, decimals, 0).toString();
+    }
+
+    private static String bytes(long value) {
+        return TextFormat.appendBytes(new StringBuilder(), value, 0).toString();
+    }
+
+    private static String duration(long millis) {
+        return TextFormat.appendDuration(new StringBuilder(), millis, 0).toString();
+    }
+}